@@ -0,0 +1,358 @@
+package it.processmining.hmpp;
+
+import it.processmining.hmpp.models.HMPPHeuristicsNet;
+import it.processmining.hmpp.models.HMPPParameters;
+import it.processmining.hmpp.models.HMPPReplayFitness;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.processmining.framework.log.LogFile;
+import org.processmining.framework.log.LogReader;
+import org.processmining.framework.log.LogReaderFactory;
+import org.processmining.framework.log.LogSummary;
+import org.processmining.framework.log.ProcessInstance;
+import org.processmining.framework.models.heuristics.ContinuousSemanticsParser;
+import org.processmining.framework.models.heuristics.HeuristicsNet;
+import org.processmining.framework.util.MethodsForWorkflowLogDataStructures;
+import org.processmining.mining.geneticmining.fitness.duplicates.DTContinuousSemanticsFitness;
+
+
+/**
+ * This class checks the token game of {@link HMPPReplayFitness} against the
+ * ProM <tt>DTContinuousSemanticsFitness</tt>: several nets are mined from
+ * each log, with random (but reproducible) parameters, and the fitness and
+ * the firings of the tasks computed by the two implementations, with one
+ * and with more replay threads, are compared.
+ *
+ * When more than one combination of input tasks misses the same number of
+ * tokens, ProM picks one at random (with a fixed seed), while
+ * {@link HMPPReplayFitness} explores them in task order: on the nets with
+ * such ties the two fitness values can differ, and the task order is not
+ * necessarily within the range of the random orders. So the ProM replay is
+ * repeated with several random tie orders: the fitness must be the ProM
+ * one on the nets where the tie order makes no difference, while on the
+ * other ones the distance from the ProM range is just reported. The
+ * firings of the tasks do not depend on the tie order and must always be
+ * the same; the arc usage is only compared between one and more replay
+ * threads. Usage:
+ *
+ * <pre>
+ * java it.processmining.hmpp.HMPPFitnessCheck [-n nets] [log ...]
+ * </pre>
+ *
+ * Without logs, three sample logs are generated (with a fixed seed): two
+ * from a model with parallelism, loops, choices and noise, and one from
+ * random successions among the activities, with plenty of ties. The exit
+ * status is 1 if any net has a different fitness or different firings. The
+ * check is run by the <tt>fitness-check</tt> target of the build.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPFitnessCheck {
+
+
+	/* The tolerance on the fitness values, for the different order of the
+	 * sums */
+	private static final double TOLERANCE = 1e-9;
+	private static final long SEED = 11;
+	/* The number of random tie orders of the ProM replay */
+	private static final int TIE_ORDERS = 8;
+
+	/* The order of the events of a sample process instance */
+	private static final Comparator<Object[]> BY_TIME = new Comparator<Object[]>() {
+		public int compare(Object[] a, Object[] b) {
+			return ((Long) a[2]).compareTo((Long) b[2]);
+		}
+	};
+
+
+	/**
+	 * The command line entry point
+	 *
+	 * @param args the command line arguments
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		int nets = 50;
+		ArrayList<String> logs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-n") && i + 1 < args.length) {
+				nets = Integer.parseInt(args[++i]);
+			} else {
+				logs.add(args[i]);
+			}
+		}
+
+		int failures = 0;
+		try {
+			if (logs.isEmpty()) {
+				for (int k = 0; k < 3; k++) {
+					File sample = File.createTempFile("hmpp-sample", ".mxml");
+					sample.deleteOnExit();
+					if (k < 2) {
+						writeSampleLog(sample, new Random(SEED + k), 300 + 200 * k, 0.05 * k, false);
+					} else {
+						/* A seed whose nets have ties */
+						writeSampleLog(sample, new Random(SEED + 5), 500, 0.1, true);
+					}
+					logs.add(sample.getPath());
+				}
+			}
+			for (String log : logs) {
+				failures += check(log, nets);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(2);
+		}
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+
+	/**
+	 * This method compares the two fitness implementations on the nets mined
+	 * from a log
+	 *
+	 * @param logFileName the log to replay
+	 * @param nets the number of nets to mine
+	 * @return the number of nets with a different fitness or firings
+	 * @throws Exception
+	 */
+	public static int check(String logFileName, int nets) throws Exception {
+		LogReader log = LogReaderFactory.createInstance(null,
+				LogFile.getInstance(logFileName));
+		HMPP algorithm = new HMPP();
+		algorithm.mineHeuristicsNet(log);
+		algorithm.setFitnessCalculation(false);
+
+		Random random = new Random(SEED);
+		int tied = 0;
+		double deviation = 0;
+		int failures = 0;
+		for (int k = 0; k < nets; k++) {
+			HMPPParameters parameters = new HMPPParameters();
+			parameters.setRelativeToBestThreshold(random.nextDouble() * 0.5);
+			parameters.setPositiveObservationsThreshold(random.nextInt(10));
+			parameters.setDependencyThreshold(random.nextDouble() * 0.9);
+			parameters.setL1lThreshold(random.nextDouble());
+			parameters.setL2lThreshold(random.nextDouble());
+			parameters.setAndThreshold(random.nextDouble());
+			parameters.setUseAllConnectedHeuristics(random.nextBoolean());
+			parameters.setUseLongDistanceDependency(random.nextBoolean());
+			parameters.setLDThreshold(random.nextDouble() * 1.2 - 0.6);
+			parameters.setDependencyDivisor(random.nextInt(4));
+			parameters.setIntervalsOverlapMultiplier(random.nextDouble() * 4);
+			algorithm.setParameters(parameters);
+			HMPPHeuristicsNet net = algorithm.makeHeuristicsRelations(log);
+
+			/* The range of the ProM fitness, over the tie orders */
+			new DTContinuousSemanticsFitness(log).calculate(new HeuristicsNet[] { net });
+			int[] expectedFiring = net.getDuplicatesActualFiring().clone();
+			double min = net.getFitness();
+			double max = min;
+			for (int seed = 0; seed < TIE_ORDERS; seed++) {
+				double fitness = promFitness(net, log, new Random(seed));
+				min = Math.min(min, fitness);
+				max = Math.max(max, fitness);
+			}
+			boolean tieDependent = max - min > TOLERANCE;
+			if (tieDependent) {
+				tied++;
+			}
+
+			double single = 0;
+			String singleArcs = null;
+			for (int threads = 1; threads <= 4; threads *= 4) {
+				algorithm.setReplayThreads(threads);
+				double fitness = algorithm.calculateFitness(net, log);
+				if (tieDependent) {
+					/* The task order is not one of the random ones, so the
+					 * fitness is not compared, just measured */
+					deviation = Math.max(deviation, Math.max(min - fitness, fitness - max));
+				}
+				String problem = null;
+				if (!tieDependent && Math.abs(fitness - min) > TOLERANCE) {
+					problem = "fitness " + fitness + " (ProM " + min + ")";
+				} else if (!Arrays.equals(expectedFiring, net.getDuplicatesActualFiring())) {
+					problem = "firings " + Arrays.toString(net.getDuplicatesActualFiring()) +
+							" (ProM " + Arrays.toString(expectedFiring) + ")";
+				} else if (threads == 1) {
+					single = fitness;
+					singleArcs = net.getArcUsage().toString();
+				} else if (fitness != single || !singleArcs.equals(net.getArcUsage().toString())) {
+					problem = "fitness or arc usage different from one thread";
+				}
+				if (problem != null) {
+					System.out.println(logFileName + ", net " + k + ", " + threads +
+							" threads: " + problem);
+					failures++;
+				}
+			}
+		}
+		System.out.println(logFileName + ": " + nets + " nets (" + tied +
+				" depending on the tie order, at most " + deviation +
+				" out of the ProM range), " + failures + " differences");
+		return failures;
+	}
+
+
+	/**
+	 * This method calculates the fitness of a net as the ProM
+	 * <tt>DTContinuousSemanticsFitness</tt>, with a given order of the ties
+	 * among the input combinations of the tasks
+	 *
+	 * @param net the net to replay (its firings and arc usage are changed)
+	 * @param log the log to replay
+	 * @param ties the random generator which breaks the ties
+	 * @return the fitness of the net
+	 */
+	@SuppressWarnings("unchecked")
+	private static double promFitness(HeuristicsNet net, LogReader log,
+			Random ties) {
+		net.resetDuplicatesActualFiring();
+		net.resetArcUsage();
+		ContinuousSemanticsParser parser = new ContinuousSemanticsParser(net, ties);
+		double parsed = 0;
+		double properlyCompleted = 0;
+		Iterator<ProcessInstance> it = log.instanceIterator();
+		while (it.hasNext()) {
+			ProcessInstance pi = it.next();
+			int similar = MethodsForWorkflowLogDataStructures.getNumberSimilarProcessInstances(pi);
+			parser.parse(pi);
+			parsed += parser.getNumParsedElements() * similar;
+			if (parser.getProperlyCompleted()) {
+				properlyCompleted += similar;
+			}
+		}
+		LogSummary summary = log.getLogSummary();
+		DTContinuousSemanticsFitness weights = new DTContinuousSemanticsFitness(log);
+		return weights.getNumEnabledConstant() * parsed / summary.getNumberOfAuditTrailEntries() +
+				weights.getNumProperlyCompletedConstant() * properlyCompleted /
+				summary.getNumberOfProcessInstances();
+	}
+
+
+	/**
+	 * This method writes a sample MXML log. The structured model has an
+	 * initial task, two parallel tasks (one of them possibly repeated), a
+	 * length one loop, a length two loop, a choice, two overlapping tasks and
+	 * a final task. In the unstructured one, each of 14 activities is
+	 * followed by one of 3 random activities.
+	 *
+	 * @param file the destination file
+	 * @param random the random generator
+	 * @param processInstances the number of process instances
+	 * @param noise the probability of shuffling the events of an instance
+	 * @param unstructured true for the random successions model
+	 * @throws IOException
+	 */
+	private static void writeSampleLog(File file, Random random,
+			int processInstances, double noise, boolean unstructured)
+			throws IOException {
+		String[][] successors = new String[14][3];
+		for (int a = 0; a < successors.length; a++) {
+			for (int s = 0; s < successors[a].length; s++) {
+				successors[a][s] = String.valueOf((char) ('A' + random.nextInt(successors.length)));
+			}
+		}
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'+00:00'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		Writer w = new BufferedWriter(new FileWriter(file));
+		try {
+			w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<WorkflowLog>\n<Process id=\"p\">\n");
+			for (int i = 0; i < processInstances; i++) {
+				ArrayList<Object[]> events = new ArrayList<Object[]>();
+				long time = 1230768000000L + random.nextInt(1000000) * 1000L;
+				if (unstructured) {
+					String task = "A";
+					for (int length = 3 + random.nextInt(12); length > 0; length--) {
+						time = addTask(events, random, task, time + 1 + random.nextInt(3000));
+						task = successors[task.charAt(0) - 'A'][random.nextInt(3)];
+					}
+				} else {
+					time = structuredInstance(events, random, time);
+				}
+				if (random.nextDouble() < noise) {
+					Collections.shuffle(events, random);
+				} else {
+					Collections.sort(events, BY_TIME);
+				}
+
+				w.write("<ProcessInstance id=\"" + i + "\">\n");
+				for (Object[] event : events) {
+					w.write("<AuditTrailEntry><WorkflowModelElement>" + event[0] +
+							"</WorkflowModelElement><EventType>" + event[1] +
+							"</EventType><Timestamp>" + format.format(new Date((Long) event[2])) +
+							"</Timestamp><Originator>u</Originator></AuditTrailEntry>\n");
+				}
+				w.write("</ProcessInstance>\n");
+			}
+			w.write("</Process>\n</WorkflowLog>\n");
+		} finally {
+			w.close();
+		}
+	}
+
+
+	/**
+	 * This method adds the events of a process instance of the structured
+	 * sample model
+	 *
+	 * @return the completion time
+	 */
+	private static long structuredInstance(ArrayList<Object[]> events,
+			Random random, long time) {
+		time = addTask(events, random, "A", time);
+		long b = addTask(events, random, "B", time + random.nextInt(5000));
+		if (random.nextDouble() < 0.3) {
+			b = addTask(events, random, "B", b + 1000);
+		}
+		time = Math.max(b, addTask(events, random, "C", time + random.nextInt(5000)));
+		do {
+			time = addTask(events, random, "D", time + 1 + random.nextInt(3000));
+		} while (random.nextDouble() >= 0.6);
+		time = addTask(events, random, "E", time + 1 + random.nextInt(3000));
+		while (random.nextDouble() >= 0.6) {
+			time = addTask(events, random, "F", time + 1 + random.nextInt(3000));
+			time = addTask(events, random, "E", time + 1 + random.nextInt(3000));
+		}
+		time = addTask(events, random, random.nextBoolean() ? "G" : "H", time + 2000);
+		if (random.nextDouble() < 0.4) {
+			/* K starts and completes while J is running */
+			events.add(new Object[] { "J", "start", time + 1000 });
+			events.add(new Object[] { "K", "start", time + 2500 });
+			events.add(new Object[] { "K", "complete", time + 4700 });
+			events.add(new Object[] { "J", "complete", time + 10100 });
+			time += 10100;
+		}
+		return addTask(events, random, "I", time + 1000);
+	}
+
+
+	/**
+	 * This method adds the start and the complete events of a task
+	 *
+	 * @return the completion time
+	 */
+	private static long addTask(ArrayList<Object[]> events, Random random,
+			String task, long start) {
+		long complete = start + random.nextInt(90000);
+		events.add(new Object[] { task, "start", start });
+		events.add(new Object[] { task, "complete", complete });
+		return complete;
+	}
+}
@@ -1,22 +1,40 @@
 package it.processmining.hmpp;
 
+import it.processmining.hmpp.models.HMPPBasicRelations;
+import it.processmining.hmpp.models.HMPPBitSubSet;
+import it.processmining.hmpp.models.HMPPCountMatrix;
+import it.processmining.hmpp.models.HMPPCountVector;
+import it.processmining.hmpp.models.HMPPDurationPlan;
+import it.processmining.hmpp.models.HMPPEscapeAnalysis;
+import it.processmining.hmpp.models.HMPPEventDictionary;
+import it.processmining.hmpp.models.HMPPFitnessSampler;
 import it.processmining.hmpp.models.HMPPHeuristicsNet;
+import it.processmining.hmpp.models.HMPPIntervalSweep;
+import it.processmining.hmpp.models.HMPPMeasureCache;
 import it.processmining.hmpp.models.HMPPParameters;
+import it.processmining.hmpp.models.HMPPReplayFitness;
+import it.processmining.hmpp.models.HMPPSnapshot;
+import it.processmining.hmpp.models.HMPPThresholdHistogram;
+import it.processmining.hmpp.models.HMPPTraceStore;
+import it.processmining.hmpp.models.HMPPVariantIndex;
 import it.processmining.hmpp.ui.HMPPPreferencesPanel;
 
-import java.text.DecimalFormat;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.JPanel;
 
 import org.processmining.framework.log.AuditTrailEntry;
 import org.processmining.framework.log.AuditTrailEntryList;
-import org.processmining.framework.log.LogEvent;
 import org.processmining.framework.log.LogEvents;
 import org.processmining.framework.log.LogReader;
 import org.processmining.framework.log.LogSummary;
@@ -26,8 +44,8 @@ import org.processmining.framework.models.heuristics.HNSubSet;
 import org.processmining.framework.util.PluginDocumentationLoader;
 import org.processmining.mining.MiningPlugin;
 import org.processmining.mining.MiningResult;
-import org.processmining.mining.geneticmining.fitness.duplicates.DTContinuousSemanticsFitness;
 
+import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleFactory1D;
 import cern.colt.matrix.DoubleFactory2D;
 import cern.colt.matrix.DoubleMatrix1D;
@@ -44,7 +62,17 @@ public class HMPP implements MiningPlugin {
 
 	/* The plugin name... */
 	private final String PLUGIN_NAME = "HeuristicsMiner++";
+	/* Minimum number of process instances assigned to each counting thread */
+	private static final int MIN_CASES_PER_THREAD = 64;
+	/* Seed of the variants order of the fitness samplers */
+	private static final long FITNESS_SAMPLING_SEED = 20100701L;
 	private HMPPParameters parameters;
+	/* Number of threads used to build the basic relations */
+	private int ingestionThreads = Runtime.getRuntime().availableProcessors();
+	/* Number of threads used to replay the log, and whether the fitness of
+	 * the mined nets is calculated */
+	private int replayThreads = Runtime.getRuntime().availableProcessors();
+	private boolean fitnessCalculation = true;
 
 	
 	/* The events log */
@@ -57,6 +85,32 @@ public class HMPP implements MiningPlugin {
 	/* The number of atomic events (for caching purpose) */
 	private int transitionsSize;
 	private int eventsSize;
+	/* The interned dictionary of events and activities */
+	private HMPPEventDictionary dictionary;
+	/* The log the counters have been built from (null with the online
+	 * counting), read again for the counters built on demand */
+	private LogReader countedLog;
+	/* The columnar encoding of the log, built once and reused */
+	private HMPPTraceStore traceStore;
+	/* The process instances grouped by control-flow variant */
+	private HMPPVariantIndex variantIndex;
+	/* All the counters extracted from the log */
+	private HMPPBasicRelations basicRelations;
+	/* The measures of the basic relations and the Colt copy of the direct
+	 * successions (null when they must be computed again) */
+	private HMPPMeasureCache measures;
+	private DoubleMatrix2D directSuccessionMatrix;
+	/* The thresholds histograms and the relative to best values (null when
+	 * they must be computed again) */
+	private HMPPThresholdHistogram positiveObsHistogram;
+	private HMPPThresholdHistogram dependencyHistogram;
+	private double[] relativeToBestValues;
+	/* Support structures of the online counting (reused by all the traces) */
+	private int[] onlineNextInList;
+	private int[] onlinePrevInList;
+	private boolean[] onlineInList;
+	private int[] onlineNextOccurrence;
+	private HMPPIntervalSweep onlineSweep;
 	/* Matrix with the counts of parallel observations. Indexes referred to
 	 * logAtomicEvents */
 //	private int[][] observationParallel;
@@ -65,14 +119,13 @@ public class HMPP implements MiningPlugin {
 //	private int[][] observationSequence;
 	/* ===================== DATA FROM HEURISTICS MINER ===================== */
 	/* Support matrices for the start and finish event detection */
-	private DoubleMatrix1D startCount;
-	private DoubleMatrix1D endCount;
+	private HMPPCountVector startCount;
+	private HMPPCountVector endCount;
 	/* Matrix with the direct dependency measures */
 //	private DoubleMatrix2D dependencyMeasures;	
-	private DoubleMatrix2D longRangeSuccessionCount;
+	/* Null until the long distance dependencies are required */
+	private HMPPCountMatrix longRangeSuccessionCount;
 //	private DoubleMatrix2D causalSuccession;
-	/* Information about the longrange dependecy relation */
-	private DoubleMatrix2D longRangeDependencyMeasures;
 	private DoubleMatrix2D dependencyMeasuresAccepted;
 	/* Counts the total wrong dependency observations in the log */
 	private DoubleMatrix2D noiseCounters;
@@ -81,19 +134,16 @@ public class HMPP implements MiningPlugin {
 	private boolean[] L1Lrelation;
 	private DoubleMatrix2D L2LdependencyMeasuresAll;
 	private int[] L2Lrelation;
-	private DoubleMatrix2D ABdependencyMeasuresAll;
 	private boolean[] alwaysVisited;
 	
 	private DoubleMatrix2D andInMeasuresAll;
 	private DoubleMatrix2D andOutMeasuresAll;
 	
-	private DoubleMatrix2D directSuccessionCount;
-	private DoubleMatrix2D succession2Count;
-	private DoubleMatrix2D parallelCount;
+	private HMPPCountMatrix directSuccessionCount;
+	private HMPPCountMatrix succession2Count;
+	private HMPPCountMatrix parallelCount;
 	
-	private DoubleMatrix1D totalActivityCounter;
-	private DoubleMatrix1D totalActivityTime;
-	private DoubleMatrix2D totalOverlappingTime;
+	private HMPPCountVector totalActivityCounter;
 	
 	double[] bestInputMeasure;
 	double[] bestOutputMeasure;
@@ -112,6 +162,33 @@ public class HMPP implements MiningPlugin {
 	}
 	
 	
+	/**
+	 * Mining context constructor: the new miner shares the events, the
+	 * counters and all the measures computed from them with the source one,
+	 * while the parameters and the structures written when a net is built
+	 * are its own
+	 * 
+	 * @param source the miner with the counters
+	 * @param parameters the parameters of the new miner
+	 */
+	private HMPP(HMPP source, HMPPParameters parameters) {
+		this.parameters = parameters;
+		ingestionThreads = source.ingestionThreads;
+		replayThreads = source.replayThreads;
+		fitnessCalculation = source.fitnessCalculation;
+		dictionary = source.dictionary;
+		countedLog = source.countedLog;
+		traceStore = source.traceStore;
+		variantIndex = source.variantIndex;
+		basicRelations = source.basicRelations;
+		measures = source.measures;
+		directSuccessionMatrix = source.directSuccessionMatrix;
+		countersInitialization();
+		netStructuresInitialization();
+		basicRelationsMade = source.basicRelationsMade;
+	}
+	
+	
 	@Override
 	public String getName() {
 		return PLUGIN_NAME;
@@ -159,13 +236,51 @@ public class HMPP implements MiningPlugin {
 	}
 	
 	
+	/**
+	 * This method builds the heuristics net of a log, with the current
+	 * parameters, without any user interface (the basic relations are built
+	 * only the first time)
+	 * 
+	 * @param log the log to mine
+	 * @return the heuristics net, with its fitness
+	 */
+	public HMPPHeuristicsNet mineHeuristicsNet(LogReader log) {
+		if (!basicRelationsMade) {
+			dataInitialization(log);
+			makeBasicRelations(log, 0.8);
+			basicRelationsMade = true;
+		}
+		return makeHeuristicsRelations(log);
+	}
+	
+	
+	/**
+	 * This method to get the current event dictionary
+	 * 
+	 * @return the current event dictionary
+	 */
+	protected HMPPEventDictionary getDictionary() {
+		return dictionary;
+	}
+	
+	
+	/**
+	 * This method to get the current basic relations counters
+	 * 
+	 * @return the current basic relations
+	 */
+	protected HMPPBasicRelations getBasicRelations() {
+		return basicRelations;
+	}
+	
+	
 	/**
 	 * This method to get the current activity time vector
 	 * 
 	 * @return the current activity time vector
 	 */
 	protected DoubleMatrix1D getActivityTime() {
-		return totalActivityTime;
+		return basicRelations.getTotalActivityTime();
 	}
 
 	
@@ -175,7 +290,7 @@ public class HMPP implements MiningPlugin {
 	 * @return the current activity counter vector
 	 */
 	protected DoubleMatrix1D getActivityCounter() {
-		return totalActivityCounter;
+		return totalActivityCounter.toDoubleMatrix();
 	}
 
 	
@@ -185,7 +300,7 @@ public class HMPP implements MiningPlugin {
 	 * @return the current overlapping time matrix
 	 */
 	protected DoubleMatrix2D getOverlappingTime() {
-		return totalOverlappingTime;
+		return basicRelations.getTotalOverlappingTime();
 	}
 
 	
@@ -195,7 +310,7 @@ public class HMPP implements MiningPlugin {
 	 * @return the current parallel count matrix
 	 */
 	protected DoubleMatrix2D getParallelCount() {
-		return parallelCount;
+		return parallelCount.toDoubleMatrix();
 	}
 
 	
@@ -214,6 +329,147 @@ public class HMPP implements MiningPlugin {
 	}
 	
 	
+	/**
+	 * This method sets the number of threads used to build the basic
+	 * relations. The process instances are partitioned among the threads and
+	 * the partial counters are merged at the end, so the result does not
+	 * depend on this value.
+	 * 
+	 * @param threads the number of threads (1 for the sequential counting)
+	 */
+	public void setIngestionThreads(int threads) {
+		this.ingestionThreads = Math.max(1, threads);
+	}
+	
+	
+	/**
+	 * This method sets the number of threads used to replay the log, when
+	 * the fitness of a net is calculated. The control-flow variants are
+	 * shared among the threads, so the result does not depend on this value.
+	 * 
+	 * @param threads the number of threads (1 for the sequential replay)
+	 */
+	public void setReplayThreads(int threads) {
+		this.replayThreads = Math.max(1, threads);
+	}
+	
+	
+	/**
+	 * This method sets whether {@link #makeHeuristicsRelations(LogReader)}
+	 * calculates the fitness of the net. If not, the fitness can be
+	 * calculated later, only for the nets which need it, with
+	 * {@link #calculateFitness(HMPPHeuristicsNet, LogReader)}.
+	 * 
+	 * @param fitnessCalculation true to calculate the fitness of each net
+	 */
+	public void setFitnessCalculation(boolean fitnessCalculation) {
+		this.fitnessCalculation = fitnessCalculation;
+	}
+	
+	
+	/**
+	 * This method calculates the continuous semantics fitness of a net, mined
+	 * from a log, replaying each control-flow variant of the log once (see
+	 * {@link HMPPReplayFitness}). The fitness, the firings of the tasks and
+	 * the usage of the arcs are set in the net.
+	 * 
+	 * @param net the net to evaluate
+	 * @param log the log the net has been mined from
+	 * @return the fitness of the net
+	 */
+	public double calculateFitness(HMPPHeuristicsNet net, LogReader log) {
+		return new HMPPReplayFitness(net).calculate(getTraceStore(log),
+				getVariantIndex(log), replayThreads);
+	}
+	
+	
+	/**
+	 * This method prepares the estimation of the fitness of the net of the
+	 * log with the given parameters (see {@link HMPPFitnessSampler}): a first
+	 * estimate is available after few replayed variants, and it converges
+	 * to the value of {@link #calculateFitness(HMPPHeuristicsNet, LogReader)}.
+	 * 
+	 * All the data shared with this miner (the mining context, the measures
+	 * and the log indexes) are prepared here, so this method must be called
+	 * by the thread which uses the miner. The returned task, which builds the
+	 * net in the new context (without changing the parameters of this miner)
+	 * and its sampler, does not touch the miner, so it can be run in a
+	 * background thread.
+	 * 
+	 * @param parameters the parameters of the net (they must not be changed
+	 * afterwards)
+	 * @param log the log the counters have been extracted from
+	 * @return the task which builds the fitness sampler of the net
+	 */
+	public Callable<HMPPFitnessSampler> newFitnessSampler(
+			HMPPParameters parameters, LogReader log) {
+		final HMPP context = newMiningContext(parameters);
+		final HMPPTraceStore store = getTraceStore(log);
+		final HMPPVariantIndex variants = getVariantIndex(log);
+		final int processInstances = log.getLogSummary().getNumberOfProcessInstances();
+		return new Callable<HMPPFitnessSampler>() {
+			public HMPPFitnessSampler call() {
+				HMPPHeuristicsNet net = context.makeHeuristicsRelations(processInstances);
+				return new HMPPFitnessSampler(net, store, variants, FITNESS_SAMPLING_SEED);
+			}
+		};
+	}
+	
+	
+	/**
+	 * This method to get the columnar encoding of the log, building it the
+	 * first time it is required
+	 * 
+	 * @param log the log to encode
+	 * @return the log trace store
+	 */
+	protected HMPPTraceStore getTraceStore(LogReader log) {
+		if (traceStore == null) {
+			traceStore = HMPPTraceStore.build(log, dictionary);
+		}
+		return traceStore;
+	}
+	
+	
+	/**
+	 * This method to get the control-flow variants of the log, building them
+	 * the first time they are required
+	 * 
+	 * @param log the log to analyse
+	 * @return the variant index
+	 */
+	protected HMPPVariantIndex getVariantIndex(LogReader log) {
+		if (variantIndex == null) {
+			variantIndex = HMPPVariantIndex.build(getTraceStore(log));
+		}
+		return variantIndex;
+	}
+	
+	
+	/**
+	 * This method builds a new mining context on the current counters, to
+	 * build nets with other parameters: the counters and the measures
+	 * computed from them are shared (read only), the structures written
+	 * while a net is built are not, so each context can build its nets in a
+	 * different thread. The measures of this miner are computed before the
+	 * context is created, so all the contexts with the same dependency
+	 * divisor and intervals overlap multiplier reuse them. The long range
+	 * successions, if the new parameters need them, are counted here as
+	 * well. The context must not be used to add new process instances.
+	 * 
+	 * @param parameters the parameters of the new context
+	 * @return the new mining context
+	 */
+	protected HMPP newMiningContext(HMPPParameters parameters) {
+		if (parameters.useLongDistanceDependency || parameters.useCausalSuccession) {
+			getLongRangeSuccessions();
+		}
+		getMeasures();
+		getDirectSuccessionMatrix();
+		return new HMPP(this, parameters);
+	}
+	
+	
 	/**
 	 * This method builds the main object instances
 	 * 
@@ -223,293 +479,723 @@ public class HMPP implements MiningPlugin {
 		/* ====================== DATA INITIALIZATION ======================= */
 		/* Build the single events array */
 //		eventsFiltered = new LogEvents();
-		transitions = new ArrayList<String>(
-				Arrays.asList(log.getLogSummary().getModelElements()));
+		dictionary = new HMPPEventDictionary(log.getLogSummary());
+		countedLog = null;
+		traceStore = null;
+		variantIndex = null;
+		
+		basicRelations = new HMPPBasicRelations(dictionary.eventsSize(), dictionary.activitiesSize());
+		countersChanged();
+		structuresInitialization();
+		basicRelationsMade = false;
+	}
+	
+	
+	/**
+	 * This method (re)builds all the structures depending on the number of
+	 * events and activities of the dictionary. The counters are taken from
+	 * the current basic relations, all the measures are set to 0.
+	 */
+	private void structuresInitialization() {
+		countersInitialization();
+		measuresInitialization();
+	}
+	
+	
+	/**
+	 * This method takes all the counters from the current basic relations,
+	 * with the sizes of the dictionary
+	 */
+	private void countersInitialization() {
+		transitions = dictionary.getActivities();
 		transitionsSize = transitions.size();
-		events = log.getLogSummary().getLogEvents();
-		eventsSize = events.size();
+		events = dictionary.getEvents();
+		eventsSize = dictionary.eventsSize();
 		
-		startCount = DoubleFactory1D.dense.make(eventsSize, 0.0);
-		endCount = DoubleFactory1D.dense.make(eventsSize, 0.0);
+		startCount = basicRelations.getStartCount();
+		endCount = basicRelations.getEndCount();
 		
-		longRangeSuccessionCount = DoubleFactory2D.dense.make(eventsSize, eventsSize, 0);
-		longRangeDependencyMeasures = DoubleFactory2D.dense.make(eventsSize, eventsSize, 0);
+		longRangeSuccessionCount = basicRelations.getLongRangeSuccessionCount();
+		directSuccessionCount = basicRelations.getDirectSuccessionCount();
+		succession2Count = basicRelations.getSuccession2Count();
+		/* This matrix considers just the parallel relations between activity,
+		 * not between events (so between A and B instead of A-start, B-start,
+		 * A-finish, B-finish) */
+		parallelCount = basicRelations.getParallelCount();
+		
+		totalActivityCounter = basicRelations.getTotalActivityCounter();
+	}
+	
+	
+	/**
+	 * This method allocates all the measures, with the current number of
+	 * events, set to 0
+	 */
+	private void measuresInitialization() {
 //		causalSuccession = DoubleFactory2D.dense.make(logAtomicEventsSize, logAtomicEventsSize, 0);
-		longRangeSuccessionCount = DoubleFactory2D.dense.make(eventsSize, eventsSize, 0);
+		netStructuresInitialization();
+	}
+	
+	
+	/**
+	 * This method allocates all the structures written while a net is built,
+	 * with the current number of events, set to 0
+	 */
+	private void netStructuresInitialization() {
 		dependencyMeasuresAccepted = DoubleFactory2D.sparse.make(eventsSize, eventsSize, 0.0);
-		noiseCounters = DoubleFactory2D.sparse.make(events.size(), events.size(), 0);
+		noiseCounters = DoubleFactory2D.sparse.make(eventsSize, eventsSize, 0);
 		
 		L1LdependencyMeasuresAll = DoubleFactory1D.sparse.make(eventsSize, 0);
 		L2LdependencyMeasuresAll = DoubleFactory2D.sparse.make(eventsSize, eventsSize, 0);
-		ABdependencyMeasuresAll = DoubleFactory2D.sparse.make(eventsSize, eventsSize, 0);
 		
 		andInMeasuresAll = DoubleFactory2D.sparse.make(eventsSize, eventsSize, 0);
 		andOutMeasuresAll = DoubleFactory2D.sparse.make(eventsSize, eventsSize, 0);
-		
-		directSuccessionCount = DoubleFactory2D.dense.make(eventsSize, eventsSize, 0);
-		succession2Count = DoubleFactory2D.dense.make(eventsSize, eventsSize, 0);
-		/* This matrix considers just the parallel relations between activity,
-		 * not between events (so between A and B instead of A-start, B-start,
-		 * A-finish, B-finish) */
-		parallelCount = DoubleFactory2D.dense.make(transitionsSize, transitionsSize, 0);
-		
-		totalActivityCounter = DoubleFactory1D.dense.make(transitionsSize, 0);
-		totalActivityTime = DoubleFactory1D.dense.make(transitionsSize, 0);
-		totalOverlappingTime = DoubleFactory2D.dense.make(transitionsSize, transitionsSize, 0);
 	}
 	
 	
 	/**
-	 * This method builds all the basic relations, populating the long range
-	 * succession count and invoking the calculateEventFrequencies for each
-	 * process instance.
+	 * This method builds all the basic relations, invoking the
+	 * calculateEventFrequencies for each control-flow variant. The counters
+	 * depending only on the order of the events are computed once per
+	 * variant, weighted by its multiplicity, while the times are collected
+	 * for each process instance. If more than one ingestion thread is
+	 * available, the variants are partitioned among the threads. The long
+	 * range successions are not counted here, but only when they are
+	 * required (see {@link #getLongRangeSuccessions()}).
 	 * 
 	 * @param log
-	 * @param causalityFall
+	 * @param causalityFall the decay of the causal successions with the
+	 * distance, between 0 (the causal successions are not counted) and 1
 	 */
-	@SuppressWarnings("unchecked")
 	public void makeBasicRelations(LogReader log, double causalityFall) {	
-		/* Iterate through all log events */
-		Iterator<ProcessInstance> it = log.instanceIterator();
+		basicRelations.setCausalityFall(causalityFall);
+		countedLog = log;
+		HMPPTraceStore store = getTraceStore(log);
+		HMPPVariantIndex variants = getVariantIndex(log);
+		int threads = countingThreads(store, variants);
+		if (threads > 1) {
+			calculateBasicRelationsParallel(store, variants, threads, false, basicRelations);
+		} else {
+			calculateBasicRelations(store, variants, 0, variants.variants(), basicRelations);
+		}
+		countersChanged();
+	}
+	
+	
+	/**
+	 * This method to get the long range succession counts (with the causal
+	 * successions, counted in the same pass), counting them the first time
+	 * they are required: only the long distance dependencies and the causal
+	 * dependency measures need them, so the nets mined without them never
+	 * pay for the pass. The process instances are read again from the log
+	 * the counters have been built from. With the online counting, where the
+	 * process instances are not kept, they are counted with each new process
+	 * instance instead.
+	 * 
+	 * @return the long range succession counts
+	 */
+	protected HMPPCountMatrix getLongRangeSuccessions() {
+		synchronized (basicRelations) {
+			if (!basicRelations.hasLongRangeSuccessions()) {
+				/* The counters are attached only once they are complete, so
+				 * a failure leaves them to be counted again */
+				HMPPBasicRelations counted = new HMPPBasicRelations(eventsSize, transitionsSize);
+				counted.setCausalityFall(basicRelations.getCausalityFall());
+				counted.allocateLongRangeSuccessions();
+				if (countedLog != null) {
+					HMPPTraceStore store = getTraceStore(countedLog);
+					HMPPVariantIndex variants = getVariantIndex(countedLog);
+					int threads = countingThreads(store, variants);
+					if (threads > 1) {
+						calculateBasicRelationsParallel(store, variants, threads, true, counted);
+					} else {
+						calculateLongRangeRelations(store, variants, 0, variants.variants(), counted);
+					}
+				}
+				basicRelations.attachLongRangeSuccessions(counted);
+			}
+			return basicRelations.getLongRangeSuccessionCount();
+		}
+	}
+	
+	
+	/**
+	 * This method returns the number of threads to use to count the given
+	 * log
+	 * 
+	 * @param store the log trace store
+	 * @param variants the log variant index
+	 * @return the number of threads, 1 if the log is too small to be split
+	 */
+	private int countingThreads(HMPPTraceStore store, HMPPVariantIndex variants) {
+		int threads = Math.min(ingestionThreads, store.cases() / MIN_CASES_PER_THREAD);
+		return Math.min(threads, variants.variants());
+	}
+	
+	
+	/**
+	 * This method returns the default snapshot file of a log, named after
+	 * the log fingerprint, in the snapshot directory of the current user
+	 * (the directory is created, readable just by its owner, if required)
+	 * 
+	 * @param log the log
+	 * @return the snapshot file
+	 */
+	public File getSnapshotFile(LogReader log) {
+		File directory = new File(System.getProperty("user.home"),
+				".hmpp" + File.separator + "snapshots");
+		if (!directory.isDirectory() && directory.mkdirs()) {
+			directory.setReadable(false, false);
+			directory.setWritable(false, false);
+			directory.setExecutable(false, false);
+			directory.setReadable(true, true);
+			directory.setWritable(true, true);
+			directory.setExecutable(true, true);
+		}
+		return new File(directory, "hmpp-" +
+				Long.toHexString(HMPPSnapshot.fingerprint(log)) + ".snapshot");
+	}
+	
+	
+	/**
+	 * This method saves the current basic relations (with the event
+	 * dictionary) to a snapshot file
+	 * 
+	 * @param log the log the basic relations have been built from
+	 * @param file the destination file
+	 * @throws IOException
+	 */
+	public void saveBasicRelations(LogReader log, File file) throws IOException {
+		new HMPPSnapshot(dictionary, basicRelations).save(file, HMPPSnapshot.fingerprint(log));
+	}
+	
+	
+	/**
+	 * This method replaces the current basic relations with the ones of a
+	 * snapshot file, if the file has been saved from the same log
+	 * 
+	 * @param log the log to analyse
+	 * @param file the snapshot file
+	 * @return true if the basic relations have been loaded, false if the
+	 * file is missing, unreadable or saved from another log
+	 */
+	public boolean loadBasicRelations(LogReader log, File file) {
+		HMPPSnapshot snapshot;
+		try {
+			snapshot = HMPPSnapshot.load(file, HMPPSnapshot.fingerprint(log));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		if (snapshot == null) {
+			return false;
+		}
+		dictionary = snapshot.getDictionary();
+		basicRelations = snapshot.getRelations();
+		countersChanged();
+		countedLog = log;
+		traceStore = null;
+		variantIndex = null;
+		structuresInitialization();
+		basicRelationsMade = true;
+		return true;
+	}
+	
+	
+	/**
+	 * This method adds a new process instance to the current counters, as in
+	 * an online setting. Events and activities never observed before are
+	 * added to the dictionary and all the counters are enlarged
+	 * accordingly, without recounting the previous process instances (the
+	 * measures are enlarged only when the net is requested). The
+	 * heuristics net of the current counters can be obtained, at any time,
+	 * with {@link #makeHeuristicsRelations()}.
+	 * 
+	 * @param pi the new process instance
+	 */
+	@SuppressWarnings("unchecked")
+	public void addTrace(ProcessInstance pi) {
+		AuditTrailEntryList atel = pi.getAuditTrailEntryList();
+		String[] elements = new String[atel.size()];
+		String[] types = new String[atel.size()];
+		long[] timestamps = new long[atel.size()];
+		int size = 0;
+		Iterator<AuditTrailEntry> it = atel.iterator();
 		while (it.hasNext()) {
-			/* Extract the current process and its activity list */
-			ProcessInstance pi = it.next();
-			AuditTrailEntryList atel = pi.getAuditTrailEntryList();
+			AuditTrailEntry ate = it.next();
+			Date timestamp = ate.getTimestamp();
+			elements[size] = ate.getElement();
+			types[size] = ate.getType();
+			timestamps[size] = (timestamp == null) ? 0L : timestamp.getTime();
+			size++;
+		}
+		addTrace(elements, types, timestamps);
+	}
+	
+	
+	/**
+	 * This method adds a new process instance to the current counters, as in
+	 * an online setting (see {@link #addTrace(ProcessInstance)})
+	 * 
+	 * @param elements the model element of each audit trail entry
+	 * @param types the event type of each audit trail entry
+	 * @param timestamps the timestamp (in milliseconds) of each audit trail
+	 * entry
+	 */
+	public void addTrace(String[] elements, String[] types, long[] timestamps) {
+		if (dictionary == null) {
+			dictionary = new HMPPEventDictionary();
+			basicRelations = new HMPPBasicRelations(0, 0);
+			structuresInitialization();
+		}
+		/* The process instances are not kept, so the long range successions
+		 * must be counted (the ones of the log first) with each of them */
+		getLongRangeSuccessions();
+		/* Once the counting is online, the log indexes are not valid anymore */
+		countedLog = null;
+		traceStore = null;
+		variantIndex = null;
+		countersChanged();
+		
+		int[] trace = new int[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			trace[i] = dictionary.addEvent(elements[i], types[i]);
+			events.getEvent(trace[i]).incOccurrenceCount();
+		}
+		if (dictionary.eventsSize() > eventsSize ||
+				dictionary.activitiesSize() > transitionsSize) {
+			basicRelations.resize(dictionary.eventsSize(), dictionary.activitiesSize());
+			countersInitialization();
+		}
+		if (onlineInList == null || onlineInList.length < eventsSize) {
+			int capacity = Math.max(eventsSize, 2 * ((onlineInList == null) ? 0 : onlineInList.length));
+			onlineNextInList = new int[capacity];
+			onlinePrevInList = new int[capacity];
+			onlineInList = new boolean[capacity];
+			onlineNextOccurrence = new int[capacity];
+		}
+		if (onlineSweep == null || onlineSweep.capacity() < transitionsSize) {
+			onlineSweep = new HMPPIntervalSweep(Math.max(transitionsSize,
+					2 * ((onlineSweep == null) ? 0 : onlineSweep.capacity())));
+		}
+		
+		HMPPTraceStore store = HMPPTraceStore.singleCase(trace, timestamps, trace.length);
+		HMPPDurationPlan plan = new HMPPDurationPlan();
+		calculateEventsFrequencies(store, 0, trace.length, 1, basicRelations, plan, onlineSweep);
+		calculateLongRangeSuccessions(store, 0, trace.length, 1, basicRelations,
+				onlineNextInList, onlinePrevInList, onlineInList,
+				onlineNextOccurrence, causalWeights(trace.length));
+		plan.apply(store, 0, basicRelations);
+		basicRelations.addProcessInstances(1);
+	}
+	
+	
+	/**
+	 * This method populates the given counters with a range of control-flow
+	 * variants
+	 * 
+	 * @param store the log trace store
+	 * @param variants the log variant index
+	 * @param firstVariant the first variant to consider
+	 * @param lastVariant the variant after the last one to consider
+	 * @param target the counters to update
+	 */
+	private void calculateBasicRelations(HMPPTraceStore store,
+			HMPPVariantIndex variants, int firstVariant, int lastVariant,
+			HMPPBasicRelations target) {
+		/* Support structure for the intervals of the activities */
+		HMPPIntervalSweep sweep = new HMPPIntervalSweep(transitionsSize);
+		
+		for (int v = firstVariant; v < lastVariant; v++) {
+			int c = variants.getRepresentative(v);
+			int from = store.caseStart(c);
+			int to = store.caseEnd(c);
+			int weight = variants.getMultiplicity(v);
+			HMPPDurationPlan plan = new HMPPDurationPlan();
 			
 			/* Update the successors and parallels matrices */
-			calculateEventsFrequencies(atel);
+			calculateEventsFrequencies(store, from, to, weight, target, plan, sweep);
 			
-			int i = 0;
-			boolean terminate = false;
-			while (!terminate) {
-				Iterator<AuditTrailEntry> it2 = atel.iterator();
-				/* Skip the first i entries of the trace */
-				for (int j = 0; j < i; j++) {
-					it2.next();
-				}
-				/* The starting element */
-				AuditTrailEntry begin = it2.next();
-				LogEvent beginEvent = new LogEvent(begin.getElement(), begin.getType());
-				/* Find the correct row of the matices */
-				int row = events.indexOf(beginEvent);
-				
-				int distance = 0;
-				boolean foundSelf = false;
-				HNSubSet done = new HNSubSet();
-				terminate = (!it2.hasNext());
-				while (it2.hasNext() && (!foundSelf)) {
-					/* The ending element */
-					AuditTrailEntry end = it2.next();
-					LogEvent endEvent = new LogEvent(end.getElement(), end.getType());
-					/* Find the correct column of the matrices */
-					int column = events.indexOf(endEvent);
-					/* Is it the same? */
-					foundSelf = (row == column);
-					distance++;
-					
-					if (done.contains(column)) {
-						continue;
-					}
-					done.add(column);
-					
-					/* Update long range matrix */
-					longRangeSuccessionCount.set(row, column, longRangeSuccessionCount.get(row, column) + 1);
-
-					/* Update causal matrix */
-//					causalSuccession.set(row, column, causalSuccession.get(row, column) + Math.pow(causalityFall, distance - 1));
-				}
-				i++;
+			/* Update the times with each process instance of the variant */
+			for (int k = 0; k < weight; k++) {
+				plan.apply(store, store.caseStart(variants.getCase(v, k)), target);
 			}
+			target.addProcessInstances(weight);
 		}
-
-		// calculate longRangeDependencyMeasures
-		for (int i = 0; i < longRangeDependencyMeasures.rows(); i++) {
-			for (int j = 0; j < longRangeDependencyMeasures.columns(); j++) {
-				if (events.getEvent(i).getOccurrenceCount() == 0) {
-					continue;
+	}
+	
+	
+	/**
+	 * This method populates the long range successions (and the causal
+	 * successions) of the given counters with a range of control-flow
+	 * variants
+	 * 
+	 * @param store the log trace store
+	 * @param variants the log variant index
+	 * @param firstVariant the first variant to consider
+	 * @param lastVariant the variant after the last one to consider
+	 * @param target the counters to update (with the long range successions
+	 * allocated)
+	 */
+	private void calculateLongRangeRelations(HMPPTraceStore store,
+			HMPPVariantIndex variants, int firstVariant, int lastVariant,
+			HMPPBasicRelations target) {
+		/* Support structures (shared by all the process instances) */
+		int[] nextInList = new int[eventsSize];
+		int[] prevInList = new int[eventsSize];
+		boolean[] inList = new boolean[eventsSize];
+		int[] nextOccurrence = new int[eventsSize];
+		int longestTrace = 0;
+		for (int v = firstVariant; v < lastVariant; v++) {
+			int c = variants.getRepresentative(v);
+			longestTrace = Math.max(longestTrace, store.caseEnd(c) - store.caseStart(c));
+		}
+		long[] causalWeights = causalWeights(longestTrace);
+		
+		for (int v = firstVariant; v < lastVariant; v++) {
+			int c = variants.getRepresentative(v);
+			calculateLongRangeSuccessions(store, store.caseStart(c), store.caseEnd(c),
+					variants.getMultiplicity(v), target, nextInList, prevInList,
+					inList, nextOccurrence, causalWeights);
+		}
+	}
+	
+	
+	/**
+	 * This method populates the basic relations splitting the variants in
+	 * contiguous blocks, one for each thread, with about the same number of
+	 * process instances. Each thread fills its own counters, which are then
+	 * merged.
+	 * 
+	 * @param store the log trace store
+	 * @param variants the log variant index
+	 * @param threads the number of threads to use
+	 * @param longRange true to count just the long range successions, false
+	 * to count all the other basic relations
+	 * @param target the counters to update
+	 */
+	private void calculateBasicRelationsParallel(final HMPPTraceStore store,
+			final HMPPVariantIndex variants, int threads, final boolean longRange,
+			HMPPBasicRelations target) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayList<Future<HMPPBasicRelations>> partials = new ArrayList<Future<HMPPBasicRelations>>();
+			long cases = store.cases();
+			int firstVariant = 0;
+			long casesSoFar = 0;
+			for (int t = 1; t <= threads; t++) {
+				int lastVariant = firstVariant;
+				while (lastVariant < variants.variants() &&
+						(t == threads || casesSoFar < cases * t / threads)) {
+					casesSoFar += variants.getMultiplicity(lastVariant);
+					lastVariant++;
 				}
-				longRangeDependencyMeasures.set(i, j, calculateLongDistanceDependencyMeasure(i, j));
+				final int from = firstVariant;
+				final int to = lastVariant;
+				partials.add(pool.submit(new Callable<HMPPBasicRelations>() {
+					public HMPPBasicRelations call() {
+						HMPPBasicRelations partial = new HMPPBasicRelations(eventsSize, transitionsSize);
+						partial.setCausalityFall(basicRelations.getCausalityFall());
+						if (longRange) {
+							partial.allocateLongRangeSuccessions();
+							calculateLongRangeRelations(store, variants, from, to, partial);
+						} else {
+							calculateBasicRelations(store, variants, from, to, partial);
+						}
+						return partial;
+					}
+				}));
+				firstVariant = lastVariant;
 			}
-
+			for (Future<HMPPBasicRelations> partial : partials) {
+				target.merge(partial.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
 		}
 	}
 	
 	
 	/**
-	 * This method returns a map to track the number of connection for each
-	 * possible positive observations threshold
+	 * This method populates the long range succession count and the causal
+	 * successions for the given process instance. For each position of the
+	 * trace, all the distinct events following it, up to (and including) the
+	 * next occurrence of the same event, are counted once, and their causal
+	 * succession is increased by the weight of the distance of their first
+	 * occurrence.
+	 * 
+	 * The trace is visited just once, backward, keeping the events sorted by
+	 * their next occurrence in a move-to-front list: the successors of a
+	 * position are exactly the prefix of the list up to the event itself.
 	 * 
-	 * @return a hash map where the key is the possible threshold and the value
-	 * is the number of connection for that threshold (counting also all the 
-	 * lower values)
-	 */
-	public HashMap<Double, Integer> getPositiveObsThresholdsValues() {
-		HashMap<Double, Integer> toret = new HashMap<Double, Integer>();
-		Double key;
-		Integer val;
-		/* extracts the exact count for each threshold */
-		for (int i = 0; i < directSuccessionCount.columns(); i++) {
-			for (int j = 0; j < directSuccessionCount.rows(); j++) {
-				key = directSuccessionCount.get(i, j);
-				if (key > 0) {
-					val = toret.get(key);
-					if (val == null)
-						val = new Integer(0);
-					toret.put(key, val + 1);
+	 * @param store the log trace store
+	 * @param from the position of the first entry of the process instance
+	 * @param to the position after the last entry of the process instance
+	 * @param weight the number of process instances with this trace
+	 * @param target the counters to update
+	 * @param nextInList support array (size eventsSize) for the list links
+	 * @param prevInList support array (size eventsSize) for the list links
+	 * @param inList support array (size eventsSize, all false) for the list
+	 * membership
+	 * @param nextOccurrence support array (size eventsSize) for the position
+	 * of the next occurrence of the events in the list
+	 * @param causalWeights the weight of each distance (see
+	 * {@link #causalWeights(int)})
+	 */
+	private void calculateLongRangeSuccessions(HMPPTraceStore store, int from,
+			int to, int weight, HMPPBasicRelations target, int[] nextInList,
+			int[] prevInList, boolean[] inList, int[] nextOccurrence,
+			long[] causalWeights) {
+		HMPPCountMatrix longRangeSuccessions = target.getLongRangeSuccessionCount();
+		HMPPCountMatrix causalSuccessions = target.getCausalSuccessionUnits();
+		int head = -1;
+		for (int p = to - 1; p >= from; p--) {
+			int row = store.getEvent(p);
+			/* Count all the events up to the next occurrence of row */
+			for (int column = head; column != -1; column = nextInList[column]) {
+				longRangeSuccessions.increment(row, column, weight);
+				int distance = nextOccurrence[column] - p - 1;
+				if (distance < causalWeights.length) {
+					causalSuccessions.increment(row, column, weight * causalWeights[distance]);
+				}
+				if (column == row) {
+					break;
 				}
 			}
+			nextOccurrence[row] = p;
+			/* Move row to the front of the list */
+			if (row != head) {
+				if (inList[row]) {
+					nextInList[prevInList[row]] = nextInList[row];
+					if (nextInList[row] != -1) {
+						prevInList[nextInList[row]] = prevInList[row];
+					}
+				}
+				nextInList[row] = head;
+				if (head != -1) {
+					prevInList[head] = row;
+				}
+				head = row;
+				inList[row] = true;
+			}
 		}
-		
-		/* sums all bigger thresholds value */
-		Object[] keys = toret.keySet().toArray();
-		Arrays.sort(keys);
-		Integer curTot = 0;
-		for (int i = keys.length - 1; i >= 0; i--) {
-			curTot += toret.get(keys[i]);
-			toret.put((Double) keys[i], curTot);
+		/* Clean the membership flags for the next process instance */
+		for (int e = head; e != -1; e = nextInList[e]) {
+			inList[e] = false;
 		}
-		
-		return toret;
 	}
 	
 	
 	/**
-	 * This method returns an array to track the possible values for the
-	 * relative to best parameter
+	 * This method returns the weights of the causal successions, in units of
+	 * {@link HMPPBasicRelations#CAUSAL_UNIT}: the weight at index d, for the
+	 * distance d + 1, is <tt>causalityFall^d</tt>. The powers are computed
+	 * with a running multiplier, and the array stops at the first weight
+	 * which is 0, so it is empty if the causal successions are not counted.
 	 * 
-	 * @return a set with a discretization of all possible relative to best
-	 * values (for which there are changes in the output)
+	 * @param length the length of the longest trace
+	 * @return the weights of the distances up to the trace length
 	 */
-	public String[] getRelativeToBestValues() {
-		HashSet<Double> temp = new HashSet<Double>();
-		DecimalFormat f = new DecimalFormat("#.#######");
-		calculateBestRelations();
-		double measure;
-		for (int i = 0; i < eventsSize; i++) {
-			for (int j = 0; j < eventsSize; j++) {
-				measure = calculateDependencyMeasure(i, j);
-				temp.add(bestOutputMeasure[i] - measure);
+	private long[] causalWeights(int length) {
+		double fall = Math.min(basicRelations.getCausalityFall(), 1.0);
+		long[] weights = new long[(fall > 0) ? length : 0];
+		double multiplier = HMPPBasicRelations.CAUSAL_UNIT;
+		for (int d = 0; d < weights.length; d++) {
+			weights[d] = Math.round(multiplier);
+			if (weights[d] == 0) {
+				return Arrays.copyOf(weights, d);
 			}
+			multiplier *= fall;
 		}
-		
-		Double[] a = temp.toArray(new Double[temp.size()]);
-		Arrays.sort(a);
-		String[] toret = new String[a.length];
-		for (int i = 0; i < a.length; i++) {
-			toret[i] = f.format(a[i]);
+		return weights;
+	}
+	
+	
+	/**
+	 * This method to get the histogram of the possible positive observations
+	 * thresholds: the distinct direct succession counts, each one with the
+	 * number of connections with a count not lower than it. The histogram is
+	 * computed again only if the counters have changed.
+	 * 
+	 * @return the positive observations thresholds histogram
+	 */
+	public HMPPThresholdHistogram getPositiveObsHistogram() {
+		if (positiveObsHistogram == null) {
+			final HMPPThresholdHistogram.Builder values = new HMPPThresholdHistogram.Builder();
+			directSuccessionCount.forEachNonZero(new HMPPCountMatrix.EntryProcedure() {
+				public void apply(int row, int column, long value) {
+					if (value > 0) {
+						values.add(value);
+					}
+				}
+			});
+			positiveObsHistogram = values.build();
 		}
-		return toret;
+		return positiveObsHistogram;
 	}
 	
 	
 	/**
-	 * This method returns a map to track the number of connection for each
-	 * possible dependency threshold 
+	 * This method to get the possible values of the relative to best
+	 * threshold: the distinct distances of the dependency measures from the
+	 * best output measure of their event, sorted (the output changes only
+	 * when the threshold crosses one of them). The values are computed again
+	 * only with the measures (see {@link #getMeasures()}).
 	 * 
-	 * @return a hash map where the key is the possible threshold and the value
-	 * is the number of connection for that threshold (counting also all the 
-	 * lower values)
-	 */
-	public HashMap<Double, Integer> getDependencyThresholdValues() {
-		HashMap<Double, Integer> toret = new HashMap<Double, Integer>();
-		Double key;
-		Integer val;
-		/* extracts the exact count for each threshold */
-		for (int i = 0; i < directSuccessionCount.columns(); i++) {
-			for (int j = 0; j < directSuccessionCount.rows(); j++) {
-				boolean sameEvent = events.get(i).getModelElementName().equals(events.get(j).getModelElementName());
-				key =  calculateDependencyMeasure(i, j);
-				if (key > 0 && !sameEvent) {
-					val = toret.get(key);
-					if (val == null)
-						val = new Integer(0);
-					toret.put(key, val + 1);
+	 * @return the relative to best breakpoints (not a copy)
+	 */
+	public double[] getRelativeToBestValues() {
+		HMPPMeasureCache m = getMeasures();
+		if (relativeToBestValues == null) {
+			double[] bestOutput = m.getBestOutputMeasures();
+			/* The distances are made distinct row by row, so the buffer
+			 * does not grow with the square of the events */
+			double[] row = new double[eventsSize];
+			double[] values = new double[Math.max(16, eventsSize)];
+			int size = 0;
+			for (int i = 0; i < eventsSize; i++) {
+				for (int j = 0; j < eventsSize; j++) {
+					row[j] = bestOutput[i] - m.getDependency(i, j);
 				}
+				int distinct = sortDistinct(row, eventsSize);
+				if (size + distinct > values.length) {
+					values = Arrays.copyOf(values, Math.max(size + distinct, 2 * values.length));
+				}
+				System.arraycopy(row, 0, values, size, distinct);
+				size += distinct;
 			}
+			relativeToBestValues = Arrays.copyOf(values, sortDistinct(values, size));
 		}
-		
-		/* sums all bigger thresholds value */
-		Object[] keys = toret.keySet().toArray();
-		Arrays.sort(keys);
-		Integer curTot = 0;
-		for (int i = keys.length - 1; i >= 0; i--) {
-			curTot += toret.get(keys[i]);
-			toret.put((Double) keys[i], curTot);
+		return relativeToBestValues;
+	}
+	
+	
+	/**
+	 * This method returns the possible values of the relative to best
+	 * threshold (see {@link #getRelativeToBestValues()}) rounded to the
+	 * nearest multiple of a quantum, without duplicates, to get fewer and
+	 * shorter values
+	 * 
+	 * @param quantum the quantum, 0 to get the exact values
+	 * @return a new array with the sorted relative to best values
+	 */
+	public double[] getRelativeToBestValues(double quantum) {
+		double[] exact = getRelativeToBestValues();
+		double[] toret = new double[exact.length];
+		for (int k = 0; k < exact.length; k++) {
+			toret[k] = (quantum > 0) ? Math.round(exact[k] / quantum) * quantum : exact[k];
 		}
-		
-		return toret;
+		return Arrays.copyOf(toret, sortDistinct(toret, toret.length));
 	}
 	
 	
-	private void calculateBestRelations() {
-		bestInputMeasure = new double[eventsSize];
-		bestOutputMeasure = new double[eventsSize];
-		bestInputEvent = new int[eventsSize];
-		bestOutputEvent = new int[eventsSize];
-		double measure;
-		
-		for (int i = 0; i < eventsSize; i++) {
-			bestInputMeasure[i] = -10.0;
-			bestOutputMeasure[i] = -10.0;
-			bestInputEvent[i] = -1;
-			bestOutputEvent[i] = -1;
+	/**
+	 * This method sorts the first values of an array and moves the distinct
+	 * ones at its beginning, dropping the NaN (which never fulfill a
+	 * threshold)
+	 * 
+	 * @param values the values
+	 * @param size the number of values to consider
+	 * @return the number of distinct values
+	 */
+	private static int sortDistinct(double[] values, int size) {
+		Arrays.sort(values, 0, size);
+		int distinct = 0;
+		for (int k = 0; k < size && !Double.isNaN(values[k]); k++) {
+			if (distinct == 0 || values[k] != values[distinct - 1]) {
+				values[distinct++] = values[k];
+			}
 		}
-		/* Search the beste ones */
-		for (int i = 0; i < eventsSize; i++) {
-			for (int j = 0; j < eventsSize; j++) {
-				if (i != j) {
-					measure = calculateDependencyMeasure(i, j);
-//					measure = dependencyMeasuresAccepted.get(i, j);
-//					dependencyMeasuresAccepted.set(i, j, measure);
-					ABdependencyMeasuresAll.set(i, j, measure);
-
-					if (measure > bestOutputMeasure[i]) {
-						bestOutputMeasure[i] = measure;
-						bestOutputEvent[i] = j;
-					}
-					if (measure > bestInputMeasure[j]) {
-						bestInputMeasure[j] = measure;
-						bestInputEvent[j] = i;
+		return distinct;
+	}
+	
+	
+	/**
+	 * This method to get the histogram of the possible dependency
+	 * thresholds: the distinct positive dependency measures between events
+	 * of different activities, each one with the number of connections with
+	 * a measure not lower than it. The histogram is computed again only
+	 * with the measures (see {@link #getMeasures()}).
+	 * 
+	 * @return the dependency thresholds histogram
+	 */
+	public HMPPThresholdHistogram getDependencyHistogram() {
+		HMPPMeasureCache m = getMeasures();
+		if (dependencyHistogram == null) {
+			HMPPThresholdHistogram.Builder values = new HMPPThresholdHistogram.Builder();
+			for (int i = 0; i < eventsSize; i++) {
+				for (int j = 0; j < eventsSize; j++) {
+					double measure = m.getDependency(i, j);
+					if (measure > 0 && !dictionary.sameActivity(i, j)) {
+						values.add(measure);
 					}
 				}
 			}
+			dependencyHistogram = values.build();
 		}
+		return dependencyHistogram;
+	}
+	
+	
+	/**
+	 * This method takes the best input and output connections of each event
+	 * from the precomputed measures
+	 */
+	private void calculateBestRelations() {
+		HMPPMeasureCache m = getMeasures();
+		bestInputMeasure = m.getBestInputMeasures();
+		bestOutputMeasure = m.getBestOutputMeasures();
+		bestInputEvent = m.getBestInputEvents();
+		bestOutputEvent = m.getBestOutputEvents();
 	}
 	
 	
 	/**
 	 * This method extracts information on the parameter instance, calculating
-	 * the direct successions matrix and the parallel events matrix
+	 * the direct successions matrix, the length two loops matrix and the
+	 * parallel events matrix. The counters are incremented by the weight of
+	 * the trace, while the couples of positions which define the activity
+	 * and overlapping times are recorded in the plan, to be applied to the
+	 * timestamps of each process instance with the same trace.
 	 * 
-	 * @param atel the process instance's activities
+	 * @param store the log trace store
+	 * @param from the position of the first entry of the process instance
+	 * @param to the position after the last entry of the process instance
+	 * @param weight the number of process instances with this trace
+	 * @param target the counters to update
+	 * @param plan the duration plan to populate
+	 * @param sweep support structure for the activity intervals (reset at
+	 * the beginning of the process instance)
 	 */
-	@SuppressWarnings("unchecked")
-	private void calculateEventsFrequencies(AuditTrailEntryList atel) {
+	private void calculateEventsFrequencies(HMPPTraceStore store, int from,
+			int to, int weight, HMPPBasicRelations target,
+			HMPPDurationPlan plan, HMPPIntervalSweep sweep) {
+		HMPPCountMatrix directSuccessions = target.getDirectSuccessionCount();
+		HMPPCountMatrix successions2 = target.getSuccession2Count();
+		HMPPCountMatrix parallels = target.getParallelCount();
+		HMPPCountVector activityCounter = target.getTotalActivityCounter();
 
-		HashMap<String, Integer> finishedActivities = new HashMap<String, Integer>();
-		HashMap<String, Integer> finishedActivitiesEver = new HashMap<String, Integer>();
-		HashMap<String, Long[]> startedNotFinishedActivities = new HashMap<String, Long[]>();
+		/* The finished activities and the started but not finished ones */
+		sweep.reset();
 		
 		/* Starting and ending elements for this process instance */
 		int startElement = -1;
 		int endElement = -1;
 		
-		/* We have to iterate throughout the process instance */
-		Iterator<AuditTrailEntry> i = atel.iterator();
 		/* We need to remember if the last activity was a finish so if we have
 		 * no other direct successors */
 		boolean previousEventWasComplete = false;
 
-		while (i.hasNext()) {	
-			AuditTrailEntry ate = i.next();
-			LogEvent le = new LogEvent(ate.getElement(), ate.getType());
-			String leName = ate.getName();
-			String leType = ate.getType();
-			
-			int indexOfAct = events.indexOf(le);
-			int indexOfTransition = transitions.indexOf(leName);
+		for (int i = from; i < to; i++) {	
+			int indexOfAct = store.getEvent(i);
+			int indexOfTransition = dictionary.getActivity(indexOfAct);
 			
-			if (leType.equals("start")) {
+			if (dictionary.isStart(indexOfAct)) {
 				
 				/* If required, update the starting activity
 				 */
@@ -521,104 +1207,47 @@ public class HMPP implements MiningPlugin {
 				 * started but not finished are overlapped with this one and all
 				 * the activities already finished are before this one.
 				 */
-				/* Set up the activity direct successors */
-				for (String act : finishedActivities.keySet()) {
-					int indexOfCurrAct = events.indexOf(new LogEvent(act, "complete"));
-					double old = directSuccessionCount.get(indexOfCurrAct, indexOfAct);
-					directSuccessionCount.set(indexOfCurrAct, indexOfAct, old + 1);
-//					System.out.println("   Added "+ act +" => "+ leName);
+				/* Set up the activity direct successors and the length two
+				 * loops closed by this start (this activity, a finished one,
+				 * this activity again), counted between the complete event
+				 * of an activity and the start event of the other one */
+				for (int k = 0; k < sweep.finishedSize(); k++) {
+					int finished = sweep.getFinished(k);
+					int indexOfCurrAct = dictionary.getCompleteEvent(finished);
+					directSuccessions.increment(indexOfCurrAct, indexOfAct, weight);
+					if (finished != indexOfTransition &&
+							sweep.closesLengthTwoLoop(indexOfTransition, finished)) {
+						successions2.increment(dictionary.getCompleteEvent(indexOfTransition),
+								dictionary.getStartEvent(finished), weight);
+						successions2.increment(indexOfAct, indexOfCurrAct, weight);
+					}
 				}
 				
-				/* Set up the activity successors */
-//				for (String act : finishedActivitiesEver.keySet()) {
-//					int indexOfCurrAct = events.indexOf(new LogEvent(act, "complete"));
-//					double old = succession2Count.get(indexOfCurrAct, indexOfAct);
-//					succession2Count.set(transitions.indexOf(act), indexOfAct, old + 1);
-//					System.out.println("   Added "+ act +" ===> "+ leName);
-//				}
-				
-				/* Overlapped activities */
-				for (String act : startedNotFinishedActivities.keySet()) {
-					double old = parallelCount.get(transitions.indexOf(act), indexOfTransition);
-					parallelCount.set(transitions.indexOf(act), indexOfTransition, old + 1);
-					parallelCount.set(indexOfTransition, transitions.indexOf(act), old + 1);
-//					System.out.println("   Added "+ act +" || "+ leName);
-				}
-				
-				/* Started not finished increment */
-				Long[] val_started_not_finished = {1L, ate.getTimestamp().getTime()};
-				if (startedNotFinishedActivities.containsKey(leName)) {
-					val_started_not_finished[0] += startedNotFinishedActivities.get(leName)[0];
-				}
-				startedNotFinishedActivities.put(leName, val_started_not_finished);
+				/* Overlapped activities and started not finished increment */
+				sweep.start(indexOfTransition, i - from, parallels, weight);
 				
 				previousEventWasComplete = false;
 				
-			} else if (leType.equals("complete")) {
+			} else if (dictionary.isComplete(indexOfAct)) {
 				
 				/* Update the current end activity  */
 				endElement = indexOfAct;
 				
 				/* Update the activity counter and the total activity time */
-				double oldOccur = totalActivityCounter.get(indexOfTransition);
-				totalActivityCounter.set(indexOfTransition, oldOccur+1);
-				oldOccur = totalActivityTime.get(indexOfTransition);
+				activityCounter.increment(indexOfTransition, weight);
 
 				/* We have to clean this because we want to keep only the DIRECT
 				 * successors of the activity, just if there are no other
 				 * acrivity ended before */
 				if (!previousEventWasComplete) {
-					finishedActivities.clear();
+					sweep.clearFinished();
 				}
 				
 				/* This is the finish of an activity, I have just to terminate
-				 * the start.  
+				 * the start (updating the total activity time and the total
+				 * overlapping time) and to increment the finished activities
 				 */
-				/* Eventual started but not finished removal */
-				if (startedNotFinishedActivities.containsKey(leName))
-				{
-					Long[] val_started_not_finished = startedNotFinishedActivities.get(leName);
-					/* Update the total activity time */
-					double time = totalActivityTime.get(transitions.indexOf(leName));
-					time += ((ate.getTimestamp().getTime() - val_started_not_finished[1]) / 1000);
-					totalActivityTime.set(transitions.indexOf(leName), time);
-
-					/* Update the started not finished map */
-					long val = val_started_not_finished[0];
-					if (val == 1) {
-						startedNotFinishedActivities.remove(leName);
-					} else {
-						val_started_not_finished[0] = val - 1L;
-						startedNotFinishedActivities.put(leName, val_started_not_finished);
-					}
-					
-					/* Update the total overlapping time */
-					for (String act : startedNotFinishedActivities.keySet()) {
-						/* Update the overlapping time only for the activities
-						 * different from the current one */
-						if (!act.equals(leName)) {
-							int indexOfCurrAct = transitions.indexOf(act);
-							time = ate.getTimestamp().getTime() - startedNotFinishedActivities.get(act)[1];
-							time /= 1000;
-							time += totalOverlappingTime.get(indexOfTransition, indexOfCurrAct);
-							totalOverlappingTime.set(indexOfTransition, indexOfCurrAct, time);
-							totalOverlappingTime.set(indexOfCurrAct, indexOfTransition, time);
-						}
-					}
-				}
-				
-				/* Finished activities increment */
-				int val_finished = 1;
-				int val_finished_ever = 1;
-				if (finishedActivities.containsKey(leName)) {
-					val_finished += finishedActivities.get(leName);
-				}
-				finishedActivities.put(leName, val_finished);
-				
-				if (finishedActivitiesEver.containsKey(leName)) {
-					val_finished_ever += finishedActivitiesEver.get(leName);
-				}
-				finishedActivitiesEver.put(leName, val_finished_ever);
+				sweep.complete(indexOfTransition, i - from, plan);
 				
 				previousEventWasComplete = true;
 				
@@ -626,10 +1255,10 @@ public class HMPP implements MiningPlugin {
 		}
 		/* Update the start / finish process counter */
 		if (startElement >= 0) {
-			startCount.set(startElement, startCount.get(startElement) + 1);
+			target.getStartCount().increment(startElement, weight);
 		}
 		if (endElement >= 0) {
-			endCount.set(endElement, endCount.get(endElement) + 1);
+			target.getEndCount().increment(endElement, weight);
 		}
 	}
 
@@ -641,11 +1270,116 @@ public class HMPP implements MiningPlugin {
 	 *   - Build dependency measures
 	 *   - Given the InputSets and OutputSets build OR-subsets
 	 *   - Build the HeuristicsNetwork as output
+	 *   - Replay the log, for the fitness of the net (unless disabled with
+	 *     {@link #setFitnessCalculation(boolean)})
 	 * 
 	 * @param log the current log
 	 * @return the heuristics net from the log
 	 */
 	public HMPPHeuristicsNet makeHeuristicsRelations(LogReader log) {
+		HMPPHeuristicsNet result = buildHeuristicsNet(dictionary.copyEvents(),
+				log.getLogSummary().getNumberOfProcessInstances());
+		
+		/* Step 4 =========================================================== */
+		/* Building the output */
+		
+//		System.out.println("Input-output set, before disconnection:");
+//		for (int i = 0; i < eventsSize; i++) {
+//			System.out.println(events.get(i) +"  in = "+ result.getInputSet(i));
+//			System.out.println(events.get(i) +" out = "+ result.getOutputSet(i));
+//			System.out.println();
+//		}
+		
+		if (fitnessCalculation) {
+			calculateFitness(result, log);
+		}
+		
+//		result.disconnectUnusedElements();
+		
+		return result;
+	}
+	
+	
+	/**
+	 * This method accepts a length two loop between two events. The loops
+	 * are counted between the complete event of an activity and the start
+	 * event of the other one (see {@link #calculateEventsFrequencies}), so
+	 * for such a couple only the connection from the complete event to the
+	 * start event is added: the one back is given by the couple of the other
+	 * complete and start events. The other couples (two events of the same
+	 * type, or of the same activity) are connected in both directions.
+	 * 
+	 * @param i the first event index
+	 * @param j the second event index
+	 * @param measure the length two loop measure
+	 * @param inputSet the input sets of the net under construction
+	 * @param outputSet the output sets of the net under construction
+	 */
+	private void acceptL2LRelation(int i, int j, double measure,
+			HMPPBitSubSet[] inputSet, HMPPBitSubSet[] outputSet) {
+		boolean oriented = !dictionary.sameActivity(i, j) &&
+				dictionary.getType(i) != dictionary.getType(j);
+		L2Lrelation[i] = j;
+		L2Lrelation[j] = i;
+		if (!oriented || dictionary.isComplete(i)) {
+			dependencyMeasuresAccepted.set(i, j, measure);
+			inputSet[j].add(i);
+			outputSet[i].add(j);
+		}
+		if (!oriented || dictionary.isComplete(j)) {
+			dependencyMeasuresAccepted.set(j, i, measure);
+			inputSet[i].add(j);
+			outputSet[j].add(i);
+		}
+	}
+	
+	
+	/**
+	 * This method builds the heuristics net of the log the counters have
+	 * been extracted from, using the current parameters, without calculating
+	 * its fitness
+	 * 
+	 * @param processInstances the number of process instances of the log
+	 * @return the heuristics net from the current counters
+	 */
+	protected HMPPHeuristicsNet makeHeuristicsRelations(int processInstances) {
+		return buildHeuristicsNet(dictionary.copyEvents(), processInstances);
+	}
+	
+	
+	/**
+	 * This method builds the heuristics net of the process instances added
+	 * so far with {@link #addTrace(ProcessInstance)}, using the current
+	 * parameters. Since there is no log to replay, the fitness of the
+	 * returned net is not calculated.
+	 * 
+	 * @return the heuristics net from the current counters
+	 */
+	public HMPPHeuristicsNet makeHeuristicsRelations() {
+		if (dictionary == null) {
+			dictionary = new HMPPEventDictionary();
+			basicRelations = new HMPPBasicRelations(0, 0);
+			structuresInitialization();
+		}
+		if (noiseCounters.rows() != eventsSize) {
+			measuresInitialization();
+		}
+		
+		return buildHeuristicsNet(dictionary.copyEvents(),
+				basicRelations.getNumberOfProcessInstances());
+	}
+	
+	
+	/**
+	 * This method builds the heuristics net from the current counters
+	 * (steps 0 to 3 of the procedure)
+	 * 
+	 * @param netEvents the log events of the net
+	 * @param processInstances the number of process instances counted
+	 * @return the heuristics net, without the fitness
+	 */
+	private HMPPHeuristicsNet buildHeuristicsNet(LogEvents netEvents,
+			int processInstances) {
 		
 		/* Step 0 =========================================================== */
 		/* Data initialization */
@@ -654,19 +1388,19 @@ public class HMPP implements MiningPlugin {
 		/* The net we are going to build... */
 //		DependencyHeuristicsNet result = new DependencyHeuristicsNet(eventsFiltered,
 //				dependencyMeasuresAccepted, directSuccessionCount);
-		HMPPHeuristicsNet result = new HMPPHeuristicsNet(events,
-				dependencyMeasuresAccepted, directSuccessionCount);
+		HMPPHeuristicsNet result = new HMPPHeuristicsNet(netEvents,
+				dependencyMeasuresAccepted, getDirectSuccessionMatrix());
 //		HeuristicsNet result = new DependencyHeuristicsNet()
 
 		L1Lrelation = new boolean[eventsSize];
 		L2Lrelation = new int[eventsSize];
 		
-		HNSubSet[] inputSet = new HNSubSet[eventsSize];
-		HNSubSet[] outputSet = new HNSubSet[eventsSize];
+		HMPPBitSubSet[] inputSet = new HMPPBitSubSet[eventsSize];
+		HMPPBitSubSet[] outputSet = new HMPPBitSubSet[eventsSize];
 		
 		for (int i = 0; i < eventsSize; i++) {
-			inputSet[i] = new HNSubSet();
-			outputSet[i] = new HNSubSet();
+			inputSet[i] = new HMPPBitSubSet();
+			outputSet[i] = new HMPPBitSubSet();
 			L1Lrelation[i] = false;
 			L2Lrelation[i] = -10;
 		}
@@ -692,8 +1426,8 @@ public class HMPP implements MiningPlugin {
 		endTask.add(bestEnd);
 		result.setEndTasks(endTask);
 		/* Update noiseCounters */
-		noiseCounters.set(bestStart, 0, log.getLogSummary().getNumberOfProcessInstances() - startCount.get(bestStart));
-		noiseCounters.set(0, bestEnd, log.getLogSummary().getNumberOfProcessInstances() - endCount.get(bestEnd));
+		noiseCounters.set(bestStart, 0, processInstances - startCount.get(bestStart));
+		noiseCounters.set(0, bestEnd, processInstances - endCount.get(bestEnd));
 		
 		/* Step 2 =========================================================== */
 		/* Build dependency measures */
@@ -721,14 +1455,7 @@ public class HMPP implements MiningPlugin {
 				
 				if ((i != j) && (measure >= parameters.getL2lThreshold()) && 
 						((succession2Count.get(i, j) + succession2Count.get(j,i)) >= parameters.getPositiveObservationsThreshold())) {
-					dependencyMeasuresAccepted.set(i, j, measure);
-					dependencyMeasuresAccepted.set(j, i, measure);
-					L2Lrelation[i] = j;
-					L2Lrelation[j] = i;
-					inputSet[i].add(j);
-					outputSet[j].add(i);
-					inputSet[j].add(i);
-					outputSet[i].add(j);
+					acceptL2LRelation(i, j, measure, inputSet, outputSet);
 				}
 			}
 		}
@@ -772,14 +1499,7 @@ public class HMPP implements MiningPlugin {
 					measure = calculateL2LDependencyMeasure(i, j);
 					
 					if (measure > bestInputMeasure[i]) {
-						dependencyMeasuresAccepted.set(i, j, measure);
-						dependencyMeasuresAccepted.set(j, i, measure);
-						L2Lrelation[i] = j;
-						L2Lrelation[j] = i;
-						inputSet[i].add(j);
-						outputSet[j].add(i);
-						inputSet[j].add(i);
-						outputSet[i].add(j);
+						acceptL2LRelation(i, j, measure, inputSet, outputSet);
 					}
 				}
 			}
@@ -819,13 +1539,11 @@ public class HMPP implements MiningPlugin {
 			/* Connect all starts with the relative finish */
 			for (int i = 0; i < eventsSize; i++) {
 				for (int j = 0; j < eventsSize; j++) {
-					LogEvent leI = events.get(i);
-					LogEvent leJ = events.get(j);
-					boolean sameEvent = leI.getModelElementName().equals(leJ.getModelElementName());
-					boolean isIStart = leI.getEventType().equals("start");
-					boolean isIFinish = leI.getEventType().equals("complete");
-					boolean isJStart = leJ.getEventType().equals("start");
-					boolean isJFinish = leJ.getEventType().equals("complete");
+					boolean sameEvent = dictionary.sameActivity(i, j);
+					boolean isIStart = dictionary.isStart(i);
+					boolean isIFinish = dictionary.isComplete(i);
+					boolean isJStart = dictionary.isStart(j);
+					boolean isJFinish = dictionary.isComplete(j);
 					if (sameEvent /*&& isIStart && isJFinish*/) {
 						if (isIStart && isJFinish) {
 							outputSet[i].add(j);
@@ -841,11 +1559,13 @@ public class HMPP implements MiningPlugin {
 		/* Search for other connections that fulfill all the thresholds */
 		for (int i = 0; i < eventsSize; i++) {
 			for (int j = 0; j < eventsSize; j++) {
-				if (dependencyMeasuresAccepted.get(i, j) <= 0.0001) {
-					measure = calculateDependencyMeasure(i, j);
-					if (((bestOutputMeasure[i] - measure) <= parameters.getRelativeToBestThreshold()) &&
-							(directSuccessionCount.get(i, j) >= parameters.getPositiveObservationsThreshold()) &&
-							(measure >= parameters.getDependencyThreshold())) {
+				/* The thresholds are checked first, they are the cheapest
+				 * conditions */
+				measure = calculateDependencyMeasure(i, j);
+				if (((bestOutputMeasure[i] - measure) <= parameters.getRelativeToBestThreshold()) &&
+						(directSuccessionCount.get(i, j) >= parameters.getPositiveObservationsThreshold()) &&
+						(measure >= parameters.getDependencyThreshold())) {
+					if (dependencyMeasuresAccepted.get(i, j) <= 0.0001) {
 						dependencyMeasuresAccepted.set(i, j, measure);
 						inputSet[j].add(i);
 						outputSet[i].add(j);
@@ -868,10 +1588,11 @@ public class HMPP implements MiningPlugin {
 		/* Update the HeuristicsNet with non binairy dependecy relations */
 		/* Search for always visited activities */
 		if (parameters.useLongDistanceDependency) {
+			longRangeSuccessionCount = getLongRangeSuccessions();
+			HMPPEscapeAnalysis escape = new HMPPEscapeAnalysis(result);
 			alwaysVisited[bestStart] = false;
 			for (int i = 1; i < eventsSize; i++) {
-				BitSet h = new BitSet();
-				if (escapeToEndPossibleF(bestStart, i, h, result)) {
+				if (escape.escapeToEndPossible(bestStart, i)) {
 					alwaysVisited[i] = false;
 				} else {
 					alwaysVisited[i] = true;
@@ -888,8 +1609,7 @@ public class HMPP implements MiningPlugin {
 					}
 					score = calculateLongDistanceDependencyMeasure(i, j);
 					if (score > parameters.getLDThreshold()) {
-						BitSet h = new BitSet();
-						if (escapeToEndPossibleF(i, j, h, result)) {
+						if (escape.escapeToEndPossible(i, j)) {
 							// HNlongRangeFollowingChance.set(i, j, hnc);
 							dependencyMeasuresAccepted.set(i, j, score);
 
@@ -909,6 +1629,7 @@ public class HMPP implements MiningPlugin {
 							helpSet = result.getInputSet(j);
 							helpSet.add(helpSubSet);
 							result.setInputSet(j, helpSet);
+							escape.outputSetsChanged();
 						}
 					}
 				}
@@ -929,33 +1650,7 @@ public class HMPP implements MiningPlugin {
 			}
 		}
 
-		/* Step 4 =========================================================== */
-		/* Building the output */
-		HMPPHeuristicsNet[] population = new HMPPHeuristicsNet[1];
-		population[0] = result;
-		
-//		System.out.println("Input-output set, before disconnection:");
-//		for (int i = 0; i < eventsSize; i++) {
-//			System.out.println(events.get(i) +"  in = "+ result.getInputSet(i));
-//			System.out.println(events.get(i) +" out = "+ result.getOutputSet(i));
-//			System.out.println();
-//		}
-		
-		DTContinuousSemanticsFitness fitness1 = new DTContinuousSemanticsFitness(log);
-		fitness1.calculate(population);
-//		DTImprovedContinuousSemanticsFitness fitness2 = new DTImprovedContinuousSemanticsFitness(log);
-//		fitness2.calculate(population);
-		
-//		population[0].disconnectUnusedElements();
-		
-//		for (int i = 0; i < dependencyMeasuresAccepted.rows(); i++) {
-//			for (int j = 0; j < dependencyMeasuresAccepted.columns(); j++) {
-//				System.out.print(dependencyMeasuresAccepted.get(i, j) + " ");
-//			}
-//		}
-//		System.out.println("");
-		
-		return population[0];
+		return result;
 	}
 	
 
@@ -981,8 +1676,7 @@ public class HMPP implements MiningPlugin {
 	 * @return the dependency measure
 	 */
 	private double calculateL1LDependencyMeasure(int i) {
-		return ((double) directSuccessionCount.get(i, i)) /
-				(directSuccessionCount.get(i, i) + parameters.getDependencyDivisor());
+		return getMeasures().getL1L(i);
 	}
 	
 	
@@ -1003,15 +1697,7 @@ public class HMPP implements MiningPlugin {
 			(L1Lrelation[j] && succession2Count.get(j, i) >= parameters.getPositiveObservationsThreshold())) {
 			return 0.0;
 		} else {
-//			LogEvent leI = events.get(i);
-//			LogEvent leJ = events.get(j);
-//			int transitionIndexI = transitions.indexOf(leI.getModelElementName());
-//			int transitionIndexJ = transitions.indexOf(leJ.getModelElementName());
-			return ((double) succession2Count.get(i, j) + succession2Count.get(j, i)) /
-					(succession2Count.get(i, j) + 
-					 succession2Count.get(j, i) + 
-					 /*(parallelCount.get(transitionIndexI, transitionIndexJ) * parameters.getIntervalsOverlapMultiplier()) +*/ 
-					 parameters.getDependencyDivisor());
+			return getMeasures().getL2L(i, j);
 		}
 	}
 	
@@ -1024,63 +1710,98 @@ public class HMPP implements MiningPlugin {
 	 * @return the dependency measure
 	 */
 	private double calculateDependencyMeasure(int i, int j) {
-		LogEvent leI = events.get(i);
-		LogEvent leJ = events.get(j);
-		boolean sameEvent = leI.getModelElementName().equals(leJ.getModelElementName());
-		boolean isIStart = leI.getEventType().equals("start");
-		boolean isIFinish = leI.getEventType().equals("complete");
-		boolean isJStart = leJ.getEventType().equals("start");
-		boolean isJFinish = leJ.getEventType().equals("complete");
-		if (sameEvent && isIStart && isJFinish) {
-			return 1.0;
-		} else if ((!sameEvent) && isIFinish && isJStart) {
-			int transitionIndexI = transitions.indexOf(leI.getModelElementName());
-			int transitionIndexJ = transitions.indexOf(leJ.getModelElementName());
-			double calc;
-			/* TODO Check the use of direct succession or simply succession */
-			calc = (directSuccessionCount.get(i, j) - 
-					directSuccessionCount.get(j, i)) / 
-				   (directSuccessionCount.get(i, j) + 
-					directSuccessionCount.get(j, i) + 
-					(parallelCount.get(transitionIndexI, transitionIndexJ) * parameters.getIntervalsOverlapMultiplier()) + 
-					parameters.getDependencyDivisor());
-			return calc;
-		} else {
-			return 0.0;
+		/* TODO Check the use of direct succession or simply succession */
+		return getMeasures().getDependency(i, j);
+	}
+	
+	
+	/**
+	 * This method to get the dependency, L1L and L2L measures of the current
+	 * counters. They are computed again only if the counters, the dependency
+	 * divisor, the intervals overlap multiplier or the use of the causal
+	 * successions have changed.
+	 * 
+	 * @return the current measures
+	 */
+	protected HMPPMeasureCache getMeasures() {
+		if (measures == null || !measures.isValid(parameters.getDependencyDivisor(),
+				parameters.getIntervalsOverlapMultiplier(),
+				parameters.useCausalSuccession)) {
+			if (parameters.useCausalSuccession) {
+				getLongRangeSuccessions();
+			}
+			measures = new HMPPMeasureCache(dictionary, basicRelations,
+					parameters.getDependencyDivisor(),
+					parameters.getIntervalsOverlapMultiplier(),
+					parameters.useCausalSuccession);
+			dependencyHistogram = null;
+			relativeToBestValues = null;
 		}
+		return measures;
+	}
+	
+	
+	/**
+	 * This method to get the Colt copy of the direct succession counts,
+	 * shared by all the nets mined from the current counters
+	 * 
+	 * @return the direct succession counts
+	 */
+	private DoubleMatrix2D getDirectSuccessionMatrix() {
+		if (directSuccessionMatrix == null) {
+			directSuccessionMatrix = directSuccessionCount.toDoubleMatrix();
+		}
+		return directSuccessionMatrix;
+	}
+	
+	
+	/**
+	 * This method drops all the data precomputed from the counters, which
+	 * have been changed
+	 */
+	private void countersChanged() {
+		measures = null;
+		directSuccessionMatrix = null;
+		positiveObsHistogram = null;
+		dependencyHistogram = null;
+		relativeToBestValues = null;
 	}
 
 	
 	/**
-	 * This method builds the or input set for the event
+	 * This method builds the or input set for the event. The subsets are
+	 * built as bit sets, recording each change in a journal which is then
+	 * replayed on the ProM subsets (see {@link #replayOrSets(IntArrayList)})
 	 * 
 	 * @param ownerE the current event index
 	 * @param inputSet the input events set
 	 * @return the corrent input set
 	 */
-	private HNSet buildOrInputSets(int ownerE, HNSubSet inputSet) {
-		HNSet h = new HNSet();
-		int currentE;
+	private HNSet buildOrInputSets(int ownerE, HMPPBitSubSet inputSet) {
+		ArrayList<HMPPBitSubSet> h = new ArrayList<HMPPBitSubSet>();
+		IntArrayList journal = new IntArrayList();
 		// using the welcome method,
 		// distribute elements of TreeSet inputSet over the elements of HashSet h
 		boolean minimalOneOrWelcome;
-		//setE = null;
-		//Iterator hI = h.iterator();
-		HNSubSet helpTreeSet;
-		for (int isetE = 0; isetE < inputSet.size(); isetE++) {
-			currentE = inputSet.get(isetE);
+		HMPPBitSubSet helpTreeSet;
+		for (int currentE = inputSet.next(0); currentE >= 0; currentE = inputSet.next(currentE + 1)) {
 			minimalOneOrWelcome = false;
 			for (int ihI = 0; ihI < h.size(); ihI++) {
 				helpTreeSet = h.get(ihI);
 				if (xorInWelcome(ownerE, currentE, helpTreeSet)) {
 					minimalOneOrWelcome = true;
-					helpTreeSet.add(currentE);
+					if (helpTreeSet.add(currentE)) {
+						journal.add(ihI);
+						journal.add(currentE);
+					}
 				}
 			}
 			if (!minimalOneOrWelcome) {
-				helpTreeSet = new HNSubSet();
+				helpTreeSet = new HMPPBitSubSet();
 				helpTreeSet.add(currentE);
 				h.add(helpTreeSet);
+				journal.add(-1);
+				journal.add(currentE);
 			}
 		}
 
@@ -1088,66 +1809,104 @@ public class HMPP implements MiningPlugin {
 		// result is [AB] [C]
 		// repeat to get [AB] [BC]
 
-		for (int isetE = 0; isetE < inputSet.size(); isetE++) {
-			currentE = inputSet.get(isetE);
+		for (int currentE = inputSet.next(0); currentE >= 0; currentE = inputSet.next(currentE + 1)) {
 			for (int ihI = 0; ihI < h.size(); ihI++) {
 				helpTreeSet = h.get(ihI);
 				if (xorInWelcome(ownerE, currentE, helpTreeSet)) {
-					helpTreeSet.add(currentE);
+					if (helpTreeSet.add(currentE)) {
+						journal.add(ihI);
+						journal.add(currentE);
+					}
 				}
 			}
 		}
-		return h;
+		return replayOrSets(journal);
 	}
 
 
 	/**
-	 * This method builds the or output set for the event
+	 * This method builds the or output set for the event. The subsets are
+	 * built as bit sets, recording each change in a journal which is then
+	 * replayed on the ProM subsets (see {@link #replayOrSets(IntArrayList)})
 	 * 
 	 * @param ownerE the current event index
 	 * @param outputSEt the output events set
 	 * @return the corrent output set
 	 */
-	private HNSet buildOrOutputSets(int ownerE, HNSubSet outputSet) {
-		HNSet h = new HNSet();
-		int currentE;
+	private HNSet buildOrOutputSets(int ownerE, HMPPBitSubSet outputSet) {
+		ArrayList<HMPPBitSubSet> h = new ArrayList<HMPPBitSubSet>();
+		IntArrayList journal = new IntArrayList();
 
 		// using the welcome method,
 		// distribute elements of TreeSet inputSet over the elements of HashSet h
 		boolean minimalOneOrWelcome;
-		//setE = null;
-		HNSubSet helpTreeSet;
-		for (int isetE = 0; isetE < outputSet.size(); isetE++) {
-			currentE = outputSet.get(isetE);
+		HMPPBitSubSet helpTreeSet;
+		for (int currentE = outputSet.next(0); currentE >= 0; currentE = outputSet.next(currentE + 1)) {
 			minimalOneOrWelcome = false;
 			for (int ihI = 0; ihI < h.size(); ihI++) {
 				helpTreeSet = h.get(ihI);
 				if (xorOutWelcome(ownerE, currentE, helpTreeSet)) {
 					minimalOneOrWelcome = true;
-					helpTreeSet.add(currentE);
+					if (helpTreeSet.add(currentE)) {
+						journal.add(ihI);
+						journal.add(currentE);
+					}
 				}
 			}
 			if (!minimalOneOrWelcome) {
-				helpTreeSet = new HNSubSet();
+				helpTreeSet = new HMPPBitSubSet();
 				helpTreeSet.add(currentE);
 				h.add(helpTreeSet);
+				journal.add(-1);
+				journal.add(currentE);
 			}
 		}
 
 		// look to the (A v B) & (B v C) example with B A C in the inputSet;
 		// result is [AB] [C]
 		// repeat to get [AB] [BC]
-		for (int isetE = 0; isetE < outputSet.size(); isetE++) {
-			currentE = outputSet.get(isetE);
+		for (int currentE = outputSet.next(0); currentE >= 0; currentE = outputSet.next(currentE + 1)) {
 			for (int ihI = 0; ihI < h.size(); ihI++) {
 				helpTreeSet = h.get(ihI);
 				if (xorOutWelcome(ownerE, currentE, helpTreeSet)) {
-					helpTreeSet.add(currentE);
+					if (helpTreeSet.add(currentE)) {
+						journal.add(ihI);
+						journal.add(currentE);
+					}
 				}
 			}
 		}
 
-		return h;
+		return replayOrSets(journal);
+	}
+	
+	
+	/**
+	 * This method builds the ProM set of or subsets, replaying all the
+	 * changes of a journal: a couple (-1, e) creates a new subset with the
+	 * event e, a couple (s, e) adds the event e to the subset created as s-th.
+	 * The ProM set keeps its subsets sorted when they are inserted, so the
+	 * changes are replayed in the same order to obtain exactly the same set.
+	 * 
+	 * @param journal the changes of the subsets
+	 * @return the set of or subsets
+	 */
+	private static HNSet replayOrSets(IntArrayList journal) {
+		HNSet toret = new HNSet();
+		ArrayList<HNSubSet> subsets = new ArrayList<HNSubSet>();
+		for (int k = 0; k < journal.size(); k += 2) {
+			int subset = journal.get(k);
+			int event = journal.get(k + 1);
+			if (subset < 0) {
+				HNSubSet newSubset = new HNSubSet();
+				newSubset.add(event);
+				subsets.add(newSubset);
+				toret.add(newSubset);
+			} else {
+				subsets.get(subset).add(event);
+			}
+		}
+		return toret;
 	}
 
 
@@ -1159,13 +1918,11 @@ public class HMPP implements MiningPlugin {
 	 * @param h the elements subset
 	 * @return true if the elements are in a XOR splir
 	 */
-	private boolean xorInWelcome(int ownerE, int newE, HNSubSet h) {
+	private boolean xorInWelcome(int ownerE, int newE, HMPPBitSubSet h) {
 		boolean welcome = true;
-		int oldE;
 		double andValue;
 
-		for (int ihI = 0; ihI < h.size(); ihI++) {
-			oldE = h.get(ihI);
+		for (int oldE = h.next(0); oldE >= 0; oldE = h.next(oldE + 1)) {
 			andValue = andInMeasureF(ownerE, oldE, newE);
 			if (newE != oldE) {
 				andInMeasuresAll.set(newE, oldE, andValue);
@@ -1186,13 +1943,11 @@ public class HMPP implements MiningPlugin {
 	 * @param h the elements subset
 	 * @return true if the elements are in a XOR splir
 	 */
-	private boolean xorOutWelcome(int ownerE, int newE, HNSubSet h) {
+	private boolean xorOutWelcome(int ownerE, int newE, HMPPBitSubSet h) {
 		boolean welcome = true;
-		int oldE;
 		double andValue;
 
-		for (int ihI = 0; ihI < h.size(); ihI++) {
-			oldE = h.get(ihI);
+		for (int oldE = h.next(0); oldE >= 0; oldE = h.next(oldE + 1)) {
 			andValue = andOutMeasureF(ownerE, oldE, newE);
 			if (newE != oldE) {
 				andOutMeasuresAll.set(newE, oldE, andValue);
@@ -1218,8 +1973,8 @@ public class HMPP implements MiningPlugin {
 //				(directSuccessionCount.get(newE, oldE) < parameters.getPositiveObservationsThreshold())) {
 //			toret = 0.;
 		} else {
-			int pcIndexNewE = transitions.indexOf(events.get(newE).getModelElementName());
-			int pcIndexOldE = transitions.indexOf(events.get(oldE).getModelElementName());
+			int pcIndexNewE = dictionary.getActivity(newE);
+			int pcIndexOldE = dictionary.getActivity(oldE);
 			toret = ((double) directSuccessionCount.get(oldE, newE) + 
 					         directSuccessionCount.get(newE, oldE) + 
 					         (parallelCount.get(pcIndexNewE, pcIndexOldE) * parameters.getIntervalsOverlapMultiplier())) /
@@ -1244,8 +1999,8 @@ public class HMPP implements MiningPlugin {
 //				(directSuccessionCount.get(newE, oldE) < parameters.getPositiveObservationsThreshold())) {
 //			toret = 0.;
 		} else {
-			int pcIndexNewE = transitions.indexOf(events.get(newE).getModelElementName());
-			int pcIndexOldE = transitions.indexOf(events.get(oldE).getModelElementName());
+			int pcIndexNewE = dictionary.getActivity(newE);
+			int pcIndexOldE = dictionary.getActivity(oldE);
 			toret = ((double) directSuccessionCount.get(oldE, newE) + 
 					         directSuccessionCount.get(newE, oldE) + 
 					         (parallelCount.get(pcIndexNewE, pcIndexOldE) * parameters.getIntervalsOverlapMultiplier())) /
@@ -1257,81 +2012,6 @@ public class HMPP implements MiningPlugin {
 	}
 	
 	
-	/**
-	 * 
-	 * @param x
-	 * @param y
-	 * @param alreadyVisit
-	 * @param result
-	 * @return
-	 */
-	private boolean escapeToEndPossibleF(int x, int y, BitSet alreadyVisit,
-			HMPPHeuristicsNet result) {
-		HNSet outputSetX, outputSetY = new HNSet();
-		//double max, min, minh;
-		boolean escapeToEndPossible;
-		int minNum;
-
-		//          [A B]
-		// X        [C]     ---> Y
-		//          [D B F]
-
-		// build subset h = [A B C D E F] of all elements of outputSetX
-		// search for minNum of elements of min subset with X=B as element: [A B] , minNum = 2
-
-		outputSetX = result.getOutputSet(x);
-		outputSetY = result.getOutputSet(y);
-
-		HNSubSet h = new HNSubSet();
-		minNum = 1000;
-		for (int i = 0; i < outputSetX.size(); i++) {
-			HNSubSet outputSubSetX = new HNSubSet();
-			outputSubSetX = outputSetX.get(i);
-			if ((outputSubSetX.contains(y)) && (outputSubSetX.size() < minNum)) {
-				minNum = outputSubSetX.size();
-			}
-			for (int j = 0; j < outputSubSetX.size(); j++) {
-				h.add(outputSubSetX.get(j));
-			}
-		}
-
-		if (alreadyVisit.get(x)) {
-			return false;
-		} else if (x == y) {
-			return false;
-		} else if (outputSetY.size() < 0) {
-			// y is an eEe element
-			return false;
-		} else if (h.size() == 0) {
-			// x is an eEe element
-			return true;
-		} else if (h.contains(y) && (minNum == 1)) {
-			// x is unique connected with y
-			return false;
-		} else {
-			// iteration over OR-subsets in outputSetX
-			for (int i = 0; i < outputSetX.size(); i++) {
-				HNSubSet outputSubSetX = new HNSubSet();
-				outputSubSetX = outputSetX.get(i);
-				escapeToEndPossible = false;
-				for (int j = 0; j < outputSubSetX.size(); j++) {
-					int element = outputSubSetX.get(j);
-					BitSet hulpAV = (BitSet) alreadyVisit.clone();
-					hulpAV.set(x);
-					if (escapeToEndPossibleF(element, y, hulpAV, result)) {
-						escapeToEndPossible = true;
-					}
-
-				}
-				if (!escapeToEndPossible) {
-					return false;
-				}
-			}
-			return true;
-		}
-	}
-	
-	
 	/**
 	 * Method to know if it has already build the basic relations
 	 * 
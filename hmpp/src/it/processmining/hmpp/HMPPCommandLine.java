@@ -0,0 +1,300 @@
+package it.processmining.hmpp;
+
+import it.processmining.hmpp.models.HMPPBasicRelations;
+import it.processmining.hmpp.models.HMPPCountMatrix;
+import it.processmining.hmpp.models.HMPPEventDictionary;
+import it.processmining.hmpp.models.HMPPHeuristicsNet;
+import it.processmining.hmpp.models.HMPPParameters;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.processmining.exporting.heuristicsNet.HnExport;
+import org.processmining.framework.log.LogEvents;
+import org.processmining.framework.log.LogFile;
+import org.processmining.framework.log.LogReader;
+import org.processmining.framework.log.LogReaderFactory;
+import org.processmining.framework.plugin.ProvidedObject;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+
+
+/**
+ * This class is the command line entry point of the HeuristicsMiner++, for
+ * the batch mining without the ProM user interface. Usage:
+ *
+ * <pre>
+ * java it.processmining.hmpp.HMPPCommandLine [-s] [-p parameters.properties]
+ *      [key=value ...] log output-directory
+ * </pre>
+ *
+ * With <tt>-s</tt> the log (MXML or XES) is read as a stream, one process
+ * instance at a time (see {@link HMPPLogStreamReader}), so logs larger than
+ * the available memory can be mined; in this case the fitness of the net is
+ * not calculated.
+ *
+ * The parameters keys are the ones of {@link HMPPParameters} (the
+ * <tt>*_K</tt> constants); the values on the command line override the ones
+ * of the properties file. The output directory will contain the heuristics
+ * net (<tt>net.hn</tt> and <tt>net.dot</tt>) and the basic relations (the
+ * matrices as lists of non zero entries) in <tt>*.csv</tt> files.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPCommandLine {
+
+
+	private static final String SEPARATOR = ";";
+
+
+	/**
+	 * The command line entry point
+	 *
+	 * @param args the command line arguments
+	 */
+	public static void main(String[] args) {
+		/* The mining never needs a display */
+		System.setProperty("java.awt.headless", "true");
+
+		Properties properties = new Properties();
+		ArrayList<String> files = new ArrayList<String>();
+		boolean streaming = false;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-s")) {
+					streaming = true;
+				} else if (args[i].equals("-p") && i + 1 < args.length) {
+					InputStream is = new FileInputStream(args[++i]);
+					try {
+						Properties fromFile = new Properties();
+						fromFile.load(is);
+						fromFile.putAll(properties);
+						properties = fromFile;
+					} finally {
+						is.close();
+					}
+				} else if (args[i].indexOf('=') > 0) {
+					int split = args[i].indexOf('=');
+					properties.setProperty(args[i].substring(0, split),
+							args[i].substring(split + 1));
+				} else {
+					files.add(args[i]);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to read the parameters: " + e.getMessage());
+			System.exit(1);
+		}
+		if (files.size() != 2) {
+			usage();
+			System.exit(1);
+		}
+
+		HMPPParameters parameters = new HMPPParameters();
+		try {
+			parameters.setProperties(properties);
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid parameter value: " + e.getMessage());
+			usage();
+			System.exit(1);
+		}
+
+		try {
+			mine(files.get(0), new File(files.get(1)), parameters, streaming);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(2);
+		}
+	}
+
+
+	/**
+	 * This method mines a log and writes all the results
+	 *
+	 * @param logFileName the log to mine
+	 * @param outputDirectory the destination directory (created if missing)
+	 * @param parameters the algorithm parameters
+	 * @throws Exception
+	 */
+	public static void mine(String logFileName, File outputDirectory,
+			HMPPParameters parameters) throws Exception {
+		mine(logFileName, outputDirectory, parameters, false);
+	}
+
+
+	/**
+	 * This method mines a log and writes all the results
+	 *
+	 * @param logFileName the log to mine
+	 * @param outputDirectory the destination directory (created if missing)
+	 * @param parameters the algorithm parameters
+	 * @param streaming true to read the log as a stream (without the
+	 * fitness of the net)
+	 * @throws Exception
+	 */
+	public static void mine(String logFileName, File outputDirectory,
+			HMPPParameters parameters, boolean streaming) throws Exception {
+		HMPP algorithm = new HMPP();
+		algorithm.setParameters(parameters);
+		HMPPHeuristicsNet net;
+		if (streaming) {
+			new HMPPLogStreamReader(algorithm).read(new File(logFileName));
+			net = algorithm.makeHeuristicsRelations();
+		} else {
+			LogReader log = LogReaderFactory.createInstance(
+					null,
+					LogFile.getInstance(logFileName));
+			net = algorithm.mineHeuristicsNet(log);
+		}
+
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Unable to create " + outputDirectory);
+		}
+
+		/* The heuristics net */
+		OutputStream os = new FileOutputStream(new File(outputDirectory, "net.hn"));
+		try {
+			new HnExport().export(new ProvidedObject("HeuristicsNet", net), os);
+		} finally {
+			os.close();
+		}
+		Writer w = new BufferedWriter(new FileWriter(new File(outputDirectory, "net.dot")));
+		try {
+			net.writeToDotWithSplitJoinSemantics(w);
+		} finally {
+			w.close();
+		}
+
+		/* The basic relations */
+		HMPPEventDictionary dictionary = algorithm.getDictionary();
+		HMPPBasicRelations relations = algorithm.getBasicRelations();
+		ArrayList<String> events = eventNames(dictionary.getEvents());
+		ArrayList<String> activities = dictionary.getActivities();
+
+		w = new BufferedWriter(new FileWriter(new File(outputDirectory, "events.csv")));
+		try {
+			w.write("Event" + SEPARATOR + "Start" + SEPARATOR + "End\n");
+			for (int i = 0; i < events.size(); i++) {
+				w.write(events.get(i) + SEPARATOR + relations.getStartCount().get(i) +
+						SEPARATOR + relations.getEndCount().get(i) + "\n");
+			}
+		} finally {
+			w.close();
+		}
+		w = new BufferedWriter(new FileWriter(new File(outputDirectory, "activities.csv")));
+		try {
+			DoubleMatrix1D activityTime = algorithm.getActivityTime();
+			w.write("Activity" + SEPARATOR + "Executions" + SEPARATOR + "Total time\n");
+			for (int i = 0; i < activities.size(); i++) {
+				w.write(activities.get(i) + SEPARATOR +
+						relations.getTotalActivityCounter().get(i) + SEPARATOR +
+						activityTime.get(i) + "\n");
+			}
+		} finally {
+			w.close();
+		}
+		writeRelation(new File(outputDirectory, "direct-successions.csv"),
+				relations.getDirectSuccessionCount(), events);
+		writeRelation(new File(outputDirectory, "successions2.csv"),
+				relations.getSuccession2Count(), events);
+		if (relations.hasLongRangeSuccessions()) {
+			/* Counted only if the parameters required them */
+			writeRelation(new File(outputDirectory, "long-range-successions.csv"),
+					relations.getLongRangeSuccessionCount(), events);
+		}
+		writeRelation(new File(outputDirectory, "parallels.csv"),
+				relations.getParallelCount(), activities);
+
+		w = new BufferedWriter(new FileWriter(new File(outputDirectory, "overlapping-times.csv")));
+		try {
+			IntArrayList rows = new IntArrayList();
+			IntArrayList columns = new IntArrayList();
+			DoubleArrayList values = new DoubleArrayList();
+			algorithm.getOverlappingTime().getNonZeros(rows, columns, values);
+			w.write("From" + SEPARATOR + "To" + SEPARATOR + "Time\n");
+			for (int i = 0; i < rows.size(); i++) {
+				w.write(activities.get(rows.get(i)) + SEPARATOR +
+						activities.get(columns.get(i)) + SEPARATOR +
+						values.get(i) + "\n");
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+
+	/**
+	 * This method writes the non zero entries of a relation, one per line
+	 *
+	 * @param file the destination file
+	 * @param relation the relation counters
+	 * @param names the names of the rows and columns
+	 * @throws IOException
+	 */
+	private static void writeRelation(File file, HMPPCountMatrix relation,
+			final ArrayList<String> names) throws IOException {
+		final Writer w = new BufferedWriter(new FileWriter(file));
+		final IOException[] error = new IOException[1];
+		try {
+			w.write("From" + SEPARATOR + "To" + SEPARATOR + "Count\n");
+			relation.forEachNonZero(new HMPPCountMatrix.EntryProcedure() {
+				public void apply(int row, int column, long value) {
+					if (error[0] != null) {
+						return;
+					}
+					try {
+						w.write(names.get(row) + SEPARATOR + names.get(column) +
+								SEPARATOR + value + "\n");
+					} catch (IOException e) {
+						error[0] = e;
+					}
+				}
+			});
+		} finally {
+			w.close();
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+	}
+
+
+	private static ArrayList<String> eventNames(LogEvents events) {
+		ArrayList<String> toret = new ArrayList<String>();
+		for (int i = 0; i < events.size(); i++) {
+			toret.add(events.getEvent(i).getModelElementName() + " (" +
+					events.getEvent(i).getEventType() + ")");
+		}
+		return toret;
+	}
+
+
+	private static void usage() {
+		System.err.println("Usage: java " + HMPPCommandLine.class.getName() +
+				" [-s] [-p parameters.properties] [key=value ...] log output-directory");
+		System.err.println("Parameter keys: " +
+				HMPPParameters.RELATIVE_TO_BEST_THRESHOLD_K + ", " +
+				HMPPParameters.POSITIVE_OBSERVATIONS_THRESHOLD_K + ", " +
+				HMPPParameters.DEPENDENCY_THRESHOLD_K + ", " +
+				HMPPParameters.L1L_THRESHOLD_K + ", " +
+				HMPPParameters.L2L_THRESHOLD_K + ", " +
+				HMPPParameters.LONG_DISTANCE_THRESHOLD_K + ", " +
+				HMPPParameters.DEPENDENCY_DIVISOR_K + ", " +
+				HMPPParameters.AND_THRESHOLD_K + ", " +
+				HMPPParameters.INTERVALS_OVERLAP_MULTIPLIER_K + ", " +
+				HMPPParameters.USE_ALL_CONNECTED_HEURISTICS_K + ", " +
+				HMPPParameters.USE_LONG_DISTANCE_DEPENDENCY_K + ", " +
+				HMPPParameters.USE_CAUSAL_SUCCESSION_K);
+	}
+}
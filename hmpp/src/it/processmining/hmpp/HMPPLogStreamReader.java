@@ -0,0 +1,318 @@
+package it.processmining.hmpp;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+
+/**
+ * This class reads a log file (MXML or XES, possibly gzipped) as a stream,
+ * and feeds each process instance to the counting engine of a {@link HMPP}
+ * object (see {@link HMPP#addTrace(String[], String[], long[])}) as soon as
+ * it is closed. No log object is built, so the memory required depends only
+ * on the largest process instance and on the counters, not on the size of
+ * the log.
+ *
+ * For each audit trail entry only the model element, the event type and the
+ * timestamp are considered: in MXML they are the
+ * <tt>WorkflowModelElement</tt>, <tt>EventType</tt> and <tt>Timestamp</tt>
+ * elements; in XES they are the <tt>concept:name</tt>,
+ * <tt>lifecycle:transition</tt> (<tt>complete</tt> if missing) and
+ * <tt>time:timestamp</tt> attributes of the event. Entries without a model
+ * element are skipped, entries without a (valid) timestamp get a 0
+ * timestamp. As in the ProM log reader, an entry with a timestamp earlier
+ * than the last one of its process instance is moved before the first
+ * entry with a later timestamp.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPLogStreamReader {
+
+
+	/* MXML elements */
+	private static final String MXML_LOG = "WorkflowLog";
+	private static final String MXML_CASE = "ProcessInstance";
+	private static final String MXML_ENTRY = "AuditTrailEntry";
+	private static final String MXML_ELEMENT = "WorkflowModelElement";
+	private static final String MXML_TYPE = "EventType";
+	private static final String MXML_TIMESTAMP = "Timestamp";
+
+	/* XES elements and keys */
+	private static final String XES_LOG = "log";
+	private static final String XES_CASE = "trace";
+	private static final String XES_ENTRY = "event";
+	private static final String XES_ELEMENT = "concept:name";
+	private static final String XES_TYPE = "lifecycle:transition";
+	private static final String XES_TIMESTAMP = "time:timestamp";
+	private static final String XES_DEFAULT_TYPE = "complete";
+
+	private final HMPP algorithm;
+	private DatatypeFactory datatypeFactory;
+
+	/* The audit trail entries of the current process instance */
+	private String[] elements = new String[16];
+	private String[] types = new String[16];
+	private long[] timestamps = new long[16];
+	private int size = 0;
+	private Long lastTimestamp = null;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param algorithm the miner to feed with the process instances
+	 */
+	public HMPPLogStreamReader(HMPP algorithm) {
+		this.algorithm = algorithm;
+	}
+
+
+	/**
+	 * This method reads a log file (gzipped if its name ends with
+	 * <tt>.gz</tt>) and adds all its process instances to the miner
+	 *
+	 * @param file the log file
+	 * @return the number of process instances read
+	 * @throws IOException
+	 * @throws XMLStreamException if the file is not a valid MXML or XES log
+	 */
+	public int read(File file) throws IOException, XMLStreamException {
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
+		try {
+			if (file.getName().toLowerCase().endsWith(".gz")) {
+				is = new GZIPInputStream(is);
+			}
+			return read(is);
+		} finally {
+			is.close();
+		}
+	}
+
+
+	/**
+	 * This method reads a log from a stream and adds all its process
+	 * instances to the miner. The stream is not closed.
+	 *
+	 * @param is the log stream
+	 * @return the number of process instances read
+	 * @throws XMLStreamException if the stream is not a valid MXML or XES log
+	 */
+	public int read(InputStream is) throws XMLStreamException {
+		if (datatypeFactory == null) {
+			try {
+				datatypeFactory = DatatypeFactory.newInstance();
+			} catch (DatatypeConfigurationException e) {
+				throw new XMLStreamException(e);
+			}
+		}
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		XMLStreamReader reader = factory.createXMLStreamReader(is);
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					String root = reader.getLocalName();
+					if (root.equals(MXML_LOG)) {
+						return readMXML(reader);
+					} else if (root.equals(XES_LOG)) {
+						return readXES(reader);
+					}
+					throw new XMLStreamException("Unknown log format: " + root,
+							reader.getLocation());
+				}
+			}
+			throw new XMLStreamException("Empty log");
+		} finally {
+			reader.close();
+		}
+	}
+
+
+	/**
+	 * This method reads the content of a MXML log
+	 *
+	 * @param reader the reader, positioned on the root element
+	 * @return the number of process instances read
+	 * @throws XMLStreamException
+	 */
+	private int readMXML(XMLStreamReader reader) throws XMLStreamException {
+		int cases = 0;
+		boolean inEntry = false;
+		String element = null;
+		String type = null;
+		Long timestamp = null;
+		while (reader.hasNext()) {
+			int token = reader.next();
+			if (token == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if (name.equals(MXML_CASE)) {
+					startCase();
+				} else if (name.equals(MXML_ENTRY)) {
+					inEntry = true;
+					element = null;
+					type = null;
+					timestamp = null;
+				} else if (inEntry && name.equals(MXML_ELEMENT)) {
+					element = reader.getElementText().trim();
+				} else if (inEntry && name.equals(MXML_TYPE)) {
+					type = reader.getElementText().trim();
+				} else if (inEntry && name.equals(MXML_TIMESTAMP)) {
+					timestamp = parseTimestamp(reader.getElementText());
+				}
+			} else if (token == XMLStreamConstants.END_ELEMENT) {
+				String name = reader.getLocalName();
+				if (name.equals(MXML_ENTRY)) {
+					inEntry = false;
+					addEntry(element, type, timestamp);
+				} else if (name.equals(MXML_CASE)) {
+					addCase();
+					cases++;
+				}
+			}
+		}
+		return cases;
+	}
+
+
+	/**
+	 * This method reads the content of a XES log. Only the attributes
+	 * directly contained in an event are considered (nested attributes and
+	 * global attributes are skipped).
+	 *
+	 * @param reader the reader, positioned on the root element
+	 * @return the number of process instances read
+	 * @throws XMLStreamException
+	 */
+	private int readXES(XMLStreamReader reader) throws XMLStreamException {
+		int cases = 0;
+		int depth = 0;
+		int entryDepth = -1;
+		String element = null;
+		String type = null;
+		Long timestamp = null;
+		while (reader.hasNext()) {
+			int token = reader.next();
+			if (token == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				String name = reader.getLocalName();
+				if (name.equals(XES_CASE)) {
+					startCase();
+				} else if (name.equals(XES_ENTRY)) {
+					entryDepth = depth;
+					element = null;
+					type = XES_DEFAULT_TYPE;
+					timestamp = null;
+				} else if (depth == entryDepth + 1) {
+					String key = reader.getAttributeValue(null, "key");
+					String value = reader.getAttributeValue(null, "value");
+					if (XES_ELEMENT.equals(key)) {
+						element = value;
+					} else if (XES_TYPE.equals(key)) {
+						type = value;
+					} else if (XES_TIMESTAMP.equals(key)) {
+						timestamp = parseTimestamp(value);
+					}
+				}
+			} else if (token == XMLStreamConstants.END_ELEMENT) {
+				String name = reader.getLocalName();
+				if (depth == entryDepth && name.equals(XES_ENTRY)) {
+					entryDepth = -1;
+					addEntry(element, type, timestamp);
+				} else if (name.equals(XES_CASE)) {
+					addCase();
+					cases++;
+				}
+				depth--;
+			}
+		}
+		return cases;
+	}
+
+
+	/**
+	 * This method starts a new process instance
+	 */
+	private void startCase() {
+		size = 0;
+		lastTimestamp = null;
+	}
+
+
+	/**
+	 * This method adds an audit trail entry to the current process instance
+	 *
+	 * @param element the model element (the entry is skipped if null)
+	 * @param type the event type
+	 * @param timestamp the timestamp, in milliseconds (null if missing)
+	 */
+	private void addEntry(String element, String type, Long timestamp) {
+		if (element == null || type == null) {
+			return;
+		}
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, size * 2);
+			types = Arrays.copyOf(types, size * 2);
+			timestamps = Arrays.copyOf(timestamps, size * 2);
+		}
+		int position = size;
+		if (timestamp != null) {
+			if (lastTimestamp != null && timestamp < lastTimestamp) {
+				/* Out of order entry: before the first later entry */
+				position = 0;
+				while (position < size && timestamps[position] <= timestamp) {
+					position++;
+				}
+				System.arraycopy(elements, position, elements, position + 1, size - position);
+				System.arraycopy(types, position, types, position + 1, size - position);
+				System.arraycopy(timestamps, position, timestamps, position + 1, size - position);
+			} else {
+				lastTimestamp = timestamp;
+			}
+		}
+		elements[position] = element;
+		types[position] = type;
+		timestamps[position] = (timestamp == null) ? 0L : timestamp;
+		size++;
+	}
+
+
+	/**
+	 * This method gives the current process instance to the miner
+	 */
+	private void addCase() {
+		algorithm.addTrace(Arrays.copyOf(elements, size),
+				Arrays.copyOf(types, size), Arrays.copyOf(timestamps, size));
+		size = 0;
+	}
+
+
+	/**
+	 * This method parses a xs:dateTime timestamp
+	 *
+	 * @param value the timestamp string
+	 * @return the timestamp, in milliseconds (null if the value is not
+	 * valid)
+	 */
+	private Long parseTimestamp(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return datatypeFactory.newXMLGregorianCalendar(value.trim())
+					.toGregorianCalendar().getTimeInMillis();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
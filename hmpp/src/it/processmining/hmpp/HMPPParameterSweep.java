@@ -0,0 +1,478 @@
+package it.processmining.hmpp;
+
+import it.processmining.hmpp.models.HMPPCountMatrix;
+import it.processmining.hmpp.models.HMPPHeuristicsNet;
+import it.processmining.hmpp.models.HMPPMeasureCache;
+import it.processmining.hmpp.models.HMPPNetStructure;
+import it.processmining.hmpp.models.HMPPParameters;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.processmining.exporting.heuristicsNet.HnExport;
+import org.processmining.framework.log.LogReader;
+import org.processmining.framework.plugin.ProvidedObject;
+
+
+/**
+ * This class exports all the different heuristics nets which can be mined
+ * from a log, for all the combinations of relative to best, positive
+ * observations and dependency thresholds (all the other parameters have
+ * their default value). Each net is saved in the output directory as
+ * <tt>ID.hn</tt>, where the ID is the position of its first configuration
+ * in the sweep, and the file <tt>info.csv</tt> reports the configuration of
+ * each net.
+ *
+ * The nets are built in parallel, each thread with its own mining context
+ * on the counters of the miner (see {@link HMPP#newMiningContext(HMPPParameters)}),
+ * and a writer thread saves them in the order of the sweep. Since the
+ * three thresholds are only compared with the measures and the counters,
+ * two configurations which accept exactly the same values produce the same
+ * net: only the first configuration of each of these classes is mined. The
+ * fitness of the nets is not calculated, since it is not exported, and only
+ * the structures of the nets already saved are kept (see
+ * {@link HMPPNetStructure}), to find the different ones.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPParameterSweep {
+
+
+	private static final String CSV_HEADER = "ID;Relative to best;Positive observation;Dependency thr;\n";
+	private static final int JOBS_PER_THREAD = 4;
+
+	/* The mining context on the counters of the miner */
+	private final HMPP base;
+	private final int processInstances;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int evaluated = 0;
+	private int exported = 0;
+
+
+	/**
+	 * The class constructor, which creates the mining context of the sweep:
+	 * it must be called by the thread which uses the miner, while the
+	 * export, which does not touch the miner, can be run in any thread
+	 *
+	 * @param algorithm the miner, with the basic relations already built
+	 * @param log the log the basic relations have been built from
+	 */
+	public HMPPParameterSweep(HMPP algorithm, LogReader log) {
+		this.base = algorithm.newMiningContext(new HMPPParameters());
+		this.processInstances = log.getLogSummary().getNumberOfProcessInstances();
+	}
+
+
+	/**
+	 * This method sets the number of threads used to build the nets
+	 *
+	 * @param threads the number of threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+
+	/**
+	 * This method returns the number of nets built by the last sweep
+	 *
+	 * @return the number of nets built
+	 */
+	public int getEvaluated() {
+		return evaluated;
+	}
+
+
+	/**
+	 * This method returns the number of different nets saved by the last
+	 * sweep
+	 *
+	 * @return the number of nets saved
+	 */
+	public int getExported() {
+		return exported;
+	}
+
+
+	/**
+	 * This method builds the nets of all the configurations and saves the
+	 * different ones in the output directory
+	 *
+	 * @param relativeToBest the relative to best thresholds (see
+	 * {@link HMPP#getRelativeToBestValues()})
+	 * @param positiveObs the positive observations thresholds (see
+	 * {@link HMPP#getPositiveObsHistogram()})
+	 * @param dependencyThresholds the dependency thresholds (see
+	 * {@link HMPP#getDependencyHistogram()})
+	 * @param directory the output directory
+	 * @return the number of nets saved
+	 * @throws IOException if a file cannot be written
+	 * @throws InterruptedException
+	 */
+	public int export(double[] relativeToBest, double[] positiveObs,
+			double[] dependencyThresholds, File directory)
+			throws IOException, InterruptedException {
+		evaluated = 0;
+		exported = 0;
+		int minimumPositiveObs = Integer.MAX_VALUE;
+		for (double po : positiveObs) {
+			minimumPositiveObs = Math.min(minimumPositiveObs, (int) po);
+		}
+		Equivalences equivalences = new Equivalences(base, minimumPositiveObs);
+
+		final ThreadLocal<HMPP> contexts = new ThreadLocal<HMPP>() {
+			@Override
+			protected HMPP initialValue() {
+				return base.newMiningContext(new HMPPParameters());
+			}
+		};
+		BlockingQueue<Job> jobs = new ArrayBlockingQueue<Job>(threads * JOBS_PER_THREAD);
+		NetWriter writer = new NetWriter(directory, jobs);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		writer.start();
+		try {
+			int id = 0;
+			sweep:
+			for (double rtb : relativeToBest) {
+				for (double po : positiveObs) {
+					HMPPParameters para = new HMPPParameters();
+					para.setRelativeToBestThreshold(rtb);
+					para.setPositiveObservationsThreshold((int) po);
+					double[] accepted = equivalences.acceptedMeasures(para);
+					boolean[] mined = (accepted == null) ? null : new boolean[accepted.length + 1];
+					for (double dt : dependencyThresholds) {
+						if (writer.failure != null) {
+							break sweep;
+						}
+						if (mined != null) {
+							/* The configuration accepts the measures from
+							 * this position on */
+							int first = Equivalences.countLower(accepted, dt);
+							if (!mined[first]) {
+								mined[first] = true;
+								final HMPPParameters config = new HMPPParameters();
+								config.setRelativeToBestThreshold(para.getRelativeToBestThreshold());
+								config.setPositiveObservationsThreshold(para.getPositiveObservationsThreshold());
+								config.setDependencyThreshold(dt);
+								Future<HMPPHeuristicsNet> net = executor.submit(new Callable<HMPPHeuristicsNet>() {
+									public HMPPHeuristicsNet call() {
+										HMPP context = contexts.get();
+										context.setParameters(config);
+										HMPPHeuristicsNet net = context.makeHeuristicsRelations(processInstances);
+										/* The canonical form is computed here, in
+										 * parallel */
+										net.getStructure();
+										return net;
+									}
+								});
+								jobs.put(new Job(id, rtb, (int) po, dt, net));
+								evaluated++;
+							}
+						}
+						id++;
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+			jobs.put(Job.END);
+			writer.join();
+		}
+		writer.rethrow();
+		return exported;
+	}
+
+
+	/**
+	 * This class is a configuration submitted to the mining threads
+	 */
+	private static class Job {
+		private static final Job END = new Job(-1, 0, 0, 0, null);
+
+		private final int id;
+		private final double relativeToBest;
+		private final int positiveObs;
+		private final double dependencyThreshold;
+		private final Future<HMPPHeuristicsNet> net;
+
+		private Job(int id, double relativeToBest, int positiveObs,
+				double dependencyThreshold, Future<HMPPHeuristicsNet> net) {
+			this.id = id;
+			this.relativeToBest = relativeToBest;
+			this.positiveObs = positiveObs;
+			this.dependencyThreshold = dependencyThreshold;
+			this.net = net;
+		}
+	}
+
+
+	/**
+	 * This class is the thread which waits for the nets, in the order of the
+	 * sweep, and saves the ones never seen before (with the information
+	 * file, at the end). After the first failure, the remaining nets are
+	 * just discarded.
+	 */
+	private class NetWriter extends Thread {
+		private final File directory;
+		private final BlockingQueue<Job> jobs;
+		private volatile Exception failure = null;
+
+		private NetWriter(File directory, BlockingQueue<Job> jobs) {
+			this.directory = directory;
+			this.jobs = jobs;
+		}
+
+		@Override
+		public void run() {
+			HashSet<HMPPNetStructure> processes = new HashSet<HMPPNetStructure>();
+			StringBuilder csv = new StringBuilder(CSV_HEADER);
+			HnExport export = new HnExport();
+			try {
+				for (Job job = jobs.take(); job != Job.END; job = jobs.take()) {
+					if (failure != null) {
+						job.net.cancel(false);
+						continue;
+					}
+					try {
+						HMPPHeuristicsNet net = job.net.get();
+						if (processes.add(net.getStructure())) {
+							csv.append(job.id).append(";").append(job.relativeToBest).
+								append(";").append(job.positiveObs).append(";").
+								append(job.dependencyThreshold).append("\n");
+							OutputStream os = new FileOutputStream(new File(directory, job.id + ".hn"));
+							try {
+								export.export(new ProvidedObject("HeuristicsNet", net), os);
+							} finally {
+								os.close();
+							}
+							exported++;
+						}
+					} catch (ExecutionException e) {
+						failure = e;
+					} catch (IOException e) {
+						failure = e;
+					} catch (RuntimeException e) {
+						/* E.g. from the export: the queue is still drained,
+						 * or the producer would block on it */
+						failure = e;
+					}
+				}
+				if (failure == null) {
+					Writer fw = new FileWriter(new File(directory, "info.csv"));
+					try {
+						fw.write(csv.toString());
+					} finally {
+						fw.close();
+					}
+				}
+			} catch (IOException e) {
+				failure = e;
+			} catch (InterruptedException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+
+		/* Throws the failure of the thread, if any */
+		private void rethrow() throws IOException, InterruptedException {
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			} else if (failure instanceof InterruptedException) {
+				throw (InterruptedException) failure;
+			} else if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else if (failure != null) {
+				Throwable cause = failure.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+
+	/**
+	 * This class finds the configurations which produce the same net. The
+	 * relative to best and the dependency thresholds are only used to select
+	 * the other connections of each event (a direct succession count not
+	 * lower than the positive observations threshold is required as well),
+	 * while the positive observations threshold is compared also with the
+	 * counters of the length one and two loops. So, two relative to best (or
+	 * positive observations) thresholds with no value of these measures (or
+	 * counters) between them are equivalent, and so are two dependency
+	 * thresholds with no dependency measure between them, among the ones of
+	 * the couples which fulfill the other two thresholds.
+	 */
+	private static class Equivalences {
+		/* The couples which can be accepted as other connections */
+		private final double[] candidateMeasure;
+		private final double[] candidateDistance;
+		private final long[] candidateCount;
+		private final int candidates;
+
+		/* All the values compared with the thresholds (sorted, distinct) */
+		private final double[] distances;
+		private final double[] counts;
+
+		private final HashSet<Long> groups = new HashSet<Long>();
+
+		private Equivalences(HMPP context, int minimumPositiveObs) {
+			final HMPPMeasureCache measures = context.getMeasures();
+			final double[] bestOutputMeasure = measures.getBestOutputMeasures();
+			HMPPCountMatrix directSuccessionCount = context.getBasicRelations().getDirectSuccessionCount();
+			HMPPCountMatrix succession2Count = context.getBasicRelations().getSuccession2Count();
+			int eventsSize = context.getDictionary().eventsSize();
+
+			final Values measure = new Values();
+			final Values distance = new Values();
+			final Values count = new Values();
+			if (minimumPositiveObs > 0) {
+				/* Only the couples with a direct succession are accepted */
+				directSuccessionCount.forEachNonZero(new HMPPCountMatrix.EntryProcedure() {
+					public void apply(int row, int column, long value) {
+						double m = measures.getDependency(row, column);
+						measure.add(m);
+						distance.add(bestOutputMeasure[row] - m);
+						count.add(value);
+					}
+				});
+			} else {
+				for (int i = 0; i < eventsSize; i++) {
+					for (int j = 0; j < eventsSize; j++) {
+						double m = measures.getDependency(i, j);
+						measure.add(m);
+						distance.add(bestOutputMeasure[i] - m);
+						count.add(directSuccessionCount.get(i, j));
+					}
+				}
+			}
+			candidates = measure.size;
+			candidateMeasure = Arrays.copyOf(measure.values, candidates);
+			candidateDistance = Arrays.copyOf(distance.values, candidates);
+			candidateCount = new long[candidates];
+			for (int k = 0; k < candidates; k++) {
+				candidateCount[k] = (long) count.values[k];
+			}
+			distances = distance.distinct();
+
+			/* Loops counters: the length two loops compare both the single
+			 * and the summed counts */
+			final HMPPCountMatrix s2 = succession2Count;
+			count.add(0);
+			directSuccessionCount.forEachNonZero(new HMPPCountMatrix.EntryProcedure() {
+				public void apply(int row, int column, long value) {
+					count.add(value);
+				}
+			});
+			succession2Count.forEachNonZero(new HMPPCountMatrix.EntryProcedure() {
+				public void apply(int row, int column, long value) {
+					count.add(value);
+					count.add(value + s2.get(column, row));
+				}
+			});
+			counts = count.distinct();
+		}
+
+		/*
+		 * Returns the measures (sorted, distinct) of the couples which fulfill
+		 * the relative to best and the positive observations thresholds of the
+		 * configuration, or null if an equivalent configuration has already
+		 * been considered
+		 */
+		private double[] acceptedMeasures(HMPPParameters para) {
+			double relativeToBest = para.getRelativeToBestThreshold();
+			int positiveObs = para.getPositiveObservationsThreshold();
+			long group = ((long) countNotGreater(distances, relativeToBest) << 32) |
+					countLower(counts, positiveObs);
+			if (!groups.add(group)) {
+				return null;
+			}
+			Values accepted = new Values();
+			for (int k = 0; k < candidates; k++) {
+				if (candidateDistance[k] <= relativeToBest &&
+						candidateCount[k] >= positiveObs) {
+					accepted.add(candidateMeasure[k]);
+				}
+			}
+			return accepted.distinct();
+		}
+
+		/* Number of values lower than the threshold */
+		private static int countLower(double[] values, double threshold) {
+			int low = 0;
+			int high = values.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (values[mid] < threshold) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/* Number of values not greater than the threshold */
+		private static int countNotGreater(double[] values, double threshold) {
+			int low = 0;
+			int high = values.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (values[mid] <= threshold) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+
+
+	/**
+	 * This class is a growable list of values
+	 */
+	private static class Values {
+		private double[] values = new double[16];
+		private int size = 0;
+
+		private void add(double value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		/* Returns the values sorted and without duplicates, without the NaN
+		 * (which never fulfill a threshold) */
+		private double[] distinct() {
+			double[] toret = Arrays.copyOf(values, size);
+			Arrays.sort(toret);
+			int distinct = 0;
+			for (int k = 0; k < toret.length; k++) {
+				if (Double.isNaN(toret[k])) {
+					break;
+				}
+				if (distinct == 0 || toret[k] != toret[distinct - 1]) {
+					toret[distinct++] = toret[k];
+				}
+			}
+			return Arrays.copyOf(toret, distinct);
+		}
+	}
+}
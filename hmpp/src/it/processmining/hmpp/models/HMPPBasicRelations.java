@@ -0,0 +1,369 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+import cern.colt.function.IntIntDoubleFunction;
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+
+/**
+ * This class collects all the counters extracted from the log by the basic
+ * relations phase. Each counter is a sum over the process instances, so two
+ * instances of this class, filled with disjoint sets of process instances,
+ * can be merged to obtain the counters of the union.
+ *
+ * All the values are stored as exact integers (the overlapping time is kept
+ * in milliseconds, the decay weighted causal successions in fixed point,
+ * see {@link #CAUSAL_UNIT}), so the merge does not depend on the order of
+ * the partial results.
+ *
+ * The long range successions and the causal successions are needed only by
+ * some mining parameters, so they are not allocated until they are counted
+ * (see {@link #allocateLongRangeSuccessions()}).
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPBasicRelations {
+
+
+	/* The default decay of the causal successions with the distance */
+	public static final double CAUSALITY_FALL = 0.8;
+	/* The fixed point unit of the causal successions */
+	public static final long CAUSAL_UNIT = 1L << 20;
+
+	/* Indexes referred to the log events */
+	private HMPPCountVector startCount;
+	private HMPPCountVector endCount;
+	private HMPPCountMatrix directSuccessionCount;
+	private HMPPCountMatrix succession2Count;
+	/* Null until the long range successions are counted */
+	private HMPPCountMatrix longRangeSuccessionCount = null;
+	private HMPPCountMatrix causalSuccession = null;
+	private double causalityFall = CAUSALITY_FALL;
+
+	/* Indexes referred to the activities */
+	private HMPPCountMatrix parallelCount;
+	private HMPPCountVector totalActivityCounter;
+	private int activitiesSize;
+	private long[] totalActivityTime;
+	private HMPPCountMatrix totalOverlappingTimeMillis;
+
+	/* Number of process instances counted */
+	private int processInstances = 0;
+
+
+	/**
+	 * The class constructor, with all the counters set to 0
+	 *
+	 * @param eventsSize the number of log events
+	 * @param activitiesSize the number of activities
+	 */
+	public HMPPBasicRelations(int eventsSize, int activitiesSize) {
+		startCount = new HMPPCountVector(eventsSize);
+		endCount = new HMPPCountVector(eventsSize);
+		directSuccessionCount = HMPPCountMatrix.create(eventsSize, eventsSize);
+		succession2Count = HMPPCountMatrix.create(eventsSize, eventsSize);
+
+		this.activitiesSize = activitiesSize;
+		parallelCount = HMPPCountMatrix.create(activitiesSize, activitiesSize);
+		totalActivityCounter = new HMPPCountVector(activitiesSize);
+		totalActivityTime = new long[activitiesSize];
+		totalOverlappingTimeMillis = HMPPCountMatrix.createWide(activitiesSize, activitiesSize);
+	}
+
+
+	/**
+	 * This method adds all the counters of another object to the current one
+	 *
+	 * @param other the counters to add (they must have the same sizes)
+	 */
+	public void merge(HMPPBasicRelations other) {
+		startCount.add(other.startCount);
+		endCount.add(other.endCount);
+		directSuccessionCount.add(other.directSuccessionCount);
+		succession2Count.add(other.succession2Count);
+		if (other.hasLongRangeSuccessions()) {
+			allocateLongRangeSuccessions();
+			longRangeSuccessionCount.add(other.longRangeSuccessionCount);
+			causalSuccession.add(other.causalSuccession);
+		}
+
+		parallelCount.add(other.parallelCount);
+		totalActivityCounter.add(other.totalActivityCounter);
+		for (int i = 0; i < activitiesSize; i++) {
+			totalActivityTime[i] += other.totalActivityTime[i];
+		}
+		totalOverlappingTimeMillis.add(other.totalOverlappingTimeMillis);
+
+		processInstances += other.processInstances;
+	}
+
+
+	/**
+	 * This method enlarges all the counters, to make room for new events and
+	 * new activities. The existing values are kept, the new ones are 0. The
+	 * storages grow geometrically, so adding the events one at a time costs
+	 * an amortized constant number of copies of each counter.
+	 *
+	 * @param eventsSize the new number of log events
+	 * @param activitiesSize the new number of activities
+	 */
+	public void resize(int eventsSize, int activitiesSize) {
+		if (eventsSize > startCount.size()) {
+			startCount = startCount.enlarge(eventsSize);
+			endCount = endCount.enlarge(eventsSize);
+			directSuccessionCount = directSuccessionCount.enlarge(eventsSize, eventsSize);
+			succession2Count = succession2Count.enlarge(eventsSize, eventsSize);
+			if (hasLongRangeSuccessions()) {
+				longRangeSuccessionCount = longRangeSuccessionCount.enlarge(eventsSize, eventsSize);
+				causalSuccession = causalSuccession.enlarge(eventsSize, eventsSize);
+			}
+		}
+		if (activitiesSize > this.activitiesSize) {
+			parallelCount = parallelCount.enlarge(activitiesSize, activitiesSize);
+			totalActivityCounter = totalActivityCounter.enlarge(activitiesSize);
+			if (activitiesSize > totalActivityTime.length) {
+				totalActivityTime = Arrays.copyOf(totalActivityTime,
+						Math.max(activitiesSize, 2 * totalActivityTime.length));
+			}
+			totalOverlappingTimeMillis = totalOverlappingTimeMillis.enlarge(activitiesSize, activitiesSize);
+			this.activitiesSize = activitiesSize;
+		}
+	}
+
+
+	/**
+	 * This method tells if the long range successions (and the causal
+	 * successions) have been allocated
+	 *
+	 * @return true if they are available
+	 */
+	public boolean hasLongRangeSuccessions() {
+		return longRangeSuccessionCount != null;
+	}
+
+
+	/**
+	 * This method allocates the long range successions and the causal
+	 * successions, all set to 0, if they are not allocated yet
+	 */
+	public void allocateLongRangeSuccessions() {
+		if (longRangeSuccessionCount == null) {
+			int eventsSize = directSuccessionCount.rows();
+			longRangeSuccessionCount = HMPPCountMatrix.create(eventsSize, eventsSize);
+			/* The fixed point values do not fit the integer counters */
+			causalSuccession = HMPPCountMatrix.createWide(eventsSize, eventsSize);
+		}
+	}
+
+
+	/**
+	 * This method takes the long range successions and the causal
+	 * successions of other counters, with the same sizes, which have been
+	 * counted on the same process instances
+	 *
+	 * @param other the counters with the long range successions
+	 */
+	public void attachLongRangeSuccessions(HMPPBasicRelations other) {
+		longRangeSuccessionCount = other.longRangeSuccessionCount;
+		causalSuccession = other.causalSuccession;
+	}
+
+
+	/**
+	 * This method records that some process instances have been counted
+	 *
+	 * @param n the number of process instances
+	 */
+	public void addProcessInstances(int n) {
+		processInstances += n;
+	}
+
+
+	/**
+	 * This method returns the number of process instances counted
+	 *
+	 * @return the number of process instances
+	 */
+	public int getNumberOfProcessInstances() {
+		return processInstances;
+	}
+
+
+	/**
+	 * This method adds the execution time of an activity
+	 *
+	 * @param activity the activity index
+	 * @param seconds the execution time, in seconds
+	 */
+	public void addActivityTime(int activity, long seconds) {
+		totalActivityTime[activity] += seconds;
+	}
+
+
+	/**
+	 * This method adds the overlapping time of two activities (the matrix is
+	 * kept symmetric)
+	 *
+	 * @param first the first activity index
+	 * @param second the second activity index
+	 * @param millis the overlapping time, in milliseconds
+	 */
+	public void addOverlappingTime(int first, int second, long millis) {
+		totalOverlappingTimeMillis.increment(first, second, millis);
+		if (first != second) {
+			totalOverlappingTimeMillis.increment(second, first, millis);
+		}
+	}
+
+
+	/**
+	 * This method returns the total execution time of each activity, in
+	 * seconds
+	 *
+	 * @return a new vector with the activity times
+	 */
+	public DoubleMatrix1D getTotalActivityTime() {
+		DoubleMatrix1D toret = DoubleFactory1D.dense.make(activitiesSize);
+		for (int i = 0; i < activitiesSize; i++) {
+			toret.setQuick(i, totalActivityTime[i]);
+		}
+		return toret;
+	}
+
+
+	/**
+	 * This method returns the total overlapping time between activities, in
+	 * seconds
+	 *
+	 * @return a new matrix with the overlapping times
+	 */
+	public DoubleMatrix2D getTotalOverlappingTime() {
+		return totalOverlappingTimeMillis.toDoubleMatrix().forEachNonZero(
+				new IntIntDoubleFunction() {
+					public double apply(int first, int second, double millis) {
+						return millis / 1000.0;
+					}
+				});
+	}
+
+
+	public HMPPCountVector getStartCount() {
+		return startCount;
+	}
+
+
+	public HMPPCountVector getEndCount() {
+		return endCount;
+	}
+
+
+	public HMPPCountMatrix getDirectSuccessionCount() {
+		return directSuccessionCount;
+	}
+
+
+	public HMPPCountMatrix getSuccession2Count() {
+		return succession2Count;
+	}
+
+
+	/**
+	 * This method returns the long range successions
+	 *
+	 * @return the long range successions matrix, null if it has not been
+	 * allocated
+	 */
+	public HMPPCountMatrix getLongRangeSuccessionCount() {
+		return longRangeSuccessionCount;
+	}
+
+
+	/**
+	 * This method returns the causal successions, in units of
+	 * {@link #CAUSAL_UNIT}: for each position of a trace, each distinct
+	 * event following it (up to the next occurrence of the same event) adds
+	 * <tt>causalityFall^(distance - 1)</tt>, where the distance is the one
+	 * of its first occurrence
+	 *
+	 * @return the causal successions matrix, null if it has not been
+	 * allocated
+	 */
+	public HMPPCountMatrix getCausalSuccessionUnits() {
+		return causalSuccession;
+	}
+
+
+	/**
+	 * This method returns the decay weighted causal succession between two
+	 * events
+	 *
+	 * @param i the first event index
+	 * @param j the second event index
+	 * @return the causal succession, 0 if the causal successions have not
+	 * been allocated
+	 */
+	public double getCausalSuccession(int i, int j) {
+		if (causalSuccession == null) {
+			return 0;
+		}
+		return (double) causalSuccession.get(i, j) / CAUSAL_UNIT;
+	}
+
+
+	/**
+	 * This method returns the decay of the causal successions with the
+	 * distance
+	 *
+	 * @return the causality fall, 0 if the causal successions are not counted
+	 */
+	public double getCausalityFall() {
+		return causalityFall;
+	}
+
+
+	/**
+	 * This method sets the decay of the causal successions with the distance,
+	 * before the process instances are counted
+	 *
+	 * @param causalityFall the causality fall, between 0 (the causal
+	 * successions are not counted) and 1
+	 */
+	public void setCausalityFall(double causalityFall) {
+		this.causalityFall = causalityFall;
+	}
+
+
+	/**
+	 * This method returns the total activity times (in seconds), for the
+	 * snapshots of the counters
+	 *
+	 * @return the activity times array (not a copy)
+	 */
+	long[] getTotalActivityTimeSeconds() {
+		return totalActivityTime;
+	}
+
+
+	/**
+	 * This method returns the total overlapping times (in milliseconds), for
+	 * the snapshots of the counters
+	 *
+	 * @return the overlapping times matrix (not a copy)
+	 */
+	HMPPCountMatrix getTotalOverlappingTimeMillis() {
+		return totalOverlappingTimeMillis;
+	}
+
+
+	public HMPPCountMatrix getParallelCount() {
+		return parallelCount;
+	}
+
+
+	public HMPPCountVector getTotalActivityCounter() {
+		return totalActivityCounter;
+	}
+}
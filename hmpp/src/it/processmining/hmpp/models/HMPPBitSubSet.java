@@ -0,0 +1,112 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+import org.processmining.framework.models.heuristics.HNSubSet;
+
+
+/**
+ * This class is a set of events, used while a net is built in place of the
+ * ProM {@link HNSubSet}: the events are the bits of an array of words, so
+ * the membership test is a single word access, the union works a word at
+ * a time and the iteration (always in increasing order, as for the
+ * {@link HNSubSet}) skips the empty words. The array grows with the largest
+ * event added. The ProM subsets are built only when the final net is
+ * populated.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPBitSubSet {
+
+
+	private static final long[] EMPTY = new long[0];
+
+	private long[] words = EMPTY;
+	private int size = 0;
+
+
+	/**
+	 * This method adds an event to the set
+	 *
+	 * @param event the event index
+	 * @return true if the event was not in the set
+	 */
+	public boolean add(int event) {
+		int word = event >> 6;
+		if (word >= words.length) {
+			words = Arrays.copyOf(words, Math.max(word + 1, 2 * words.length));
+		}
+		long bit = 1L << event;
+		if ((words[word] & bit) != 0) {
+			return false;
+		}
+		words[word] |= bit;
+		size++;
+		return true;
+	}
+
+
+	/**
+	 * This method adds all the events of another set
+	 *
+	 * @param other the other set
+	 */
+	public void addAll(HMPPBitSubSet other) {
+		if (other.words.length > words.length) {
+			words = Arrays.copyOf(words, other.words.length);
+		}
+		size = 0;
+		for (int w = 0; w < words.length; w++) {
+			if (w < other.words.length) {
+				words[w] |= other.words[w];
+			}
+			size += Long.bitCount(words[w]);
+		}
+	}
+
+
+	/**
+	 * This method tells if an event is in the set
+	 *
+	 * @param event the event index
+	 * @return true if the event is in the set
+	 */
+	public boolean contains(int event) {
+		int word = event >> 6;
+		return word < words.length && (words[word] & (1L << event)) != 0;
+	}
+
+
+	/**
+	 * This method returns the number of events in the set
+	 *
+	 * @return the size of the set
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * This method returns the first event of the set, not lower than the
+	 * given one. To iterate over the set:
+	 * <tt>for (int e = s.next(0); e >= 0; e = s.next(e + 1))</tt>
+	 *
+	 * @param from the first event to consider
+	 * @return the event index, -1 if there is none
+	 */
+	public int next(int from) {
+		int word = from >> 6;
+		if (word >= words.length) {
+			return -1;
+		}
+		long bits = words[word] & (-1L << from);
+		while (bits == 0) {
+			if (++word == words.length) {
+				return -1;
+			}
+			bits = words[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(bits);
+	}
+}
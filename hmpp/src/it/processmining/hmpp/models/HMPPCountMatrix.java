@@ -0,0 +1,237 @@
+package it.processmining.hmpp.models;
+
+import cern.colt.matrix.DoubleFactory2D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+
+/**
+ * This class is a matrix of exact counters, used in the innermost counting
+ * loops in place of the Colt matrices, to avoid the virtual calls and the
+ * conversions from and to double of each update.
+ *
+ * Two storages are available: a dense one, with a flat primitive array and
+ * row-major indexing, and a sparse one, with an open addressing hash table,
+ * for the very large alphabets, where the dense matrices would not even fit
+ * in memory while just a tiny fraction of the couples is observed. The
+ * {@link #create(int, int)} factory picks the storage by the matrix size.
+ *
+ * @author Andrea Burattin
+ */
+public abstract class HMPPCountMatrix {
+
+
+	/* Number of cells above which the sparse storage is used (this is a
+	 * 2048 x 2048 matrix, 16MB of dense integer counters) */
+	public static final long SPARSE_CELLS = 1L << 22;
+
+	/**
+	 * This interface is a procedure to apply to the non zero counters of a
+	 * matrix
+	 */
+	public interface EntryProcedure {
+		/**
+		 * @param row the row index
+		 * @param column the column index
+		 * @param value the counter value
+		 */
+		void apply(int row, int column, long value);
+	}
+
+
+	protected int rows;
+	protected int columns;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 */
+	protected HMPPCountMatrix(int rows, int columns) {
+		this.rows = rows;
+		this.columns = columns;
+	}
+
+
+	/**
+	 * This method creates a new matrix of integer counters, all set to 0
+	 *
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 * @return the new matrix
+	 */
+	public static HMPPCountMatrix create(int rows, int columns) {
+		if ((long) rows * columns > SPARSE_CELLS) {
+			return new HMPPSparseCountMatrix(rows, columns);
+		}
+		return new HMPPDenseCountMatrix(rows, columns, false);
+	}
+
+
+	/**
+	 * This method creates a new matrix of long totals (e.g. times in
+	 * milliseconds), all set to 0
+	 *
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 * @return the new matrix
+	 */
+	public static HMPPCountMatrix createWide(int rows, int columns) {
+		if ((long) rows * columns > SPARSE_CELLS) {
+			return new HMPPSparseCountMatrix(rows, columns);
+		}
+		return new HMPPDenseCountMatrix(rows, columns, true);
+	}
+
+
+	/**
+	 * This method returns the value of a counter
+	 *
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the counter value
+	 */
+	public abstract long get(int row, int column);
+
+
+	/**
+	 * This method increments a counter
+	 *
+	 * @param row the row index
+	 * @param column the column index
+	 * @param delta the value to add
+	 * @throws ArithmeticException if the counter is an integer and the new
+	 * value does not fit it
+	 */
+	public abstract void increment(int row, int column, long delta);
+
+
+	/**
+	 * This method tells if the matrix uses the sparse storage
+	 *
+	 * @return true if the matrix is sparse
+	 */
+	public abstract boolean isSparse();
+
+
+	/**
+	 * This method tells if the matrix holds long totals
+	 *
+	 * @return true if the counters are long values
+	 */
+	protected abstract boolean isWide();
+
+
+	/**
+	 * This method applies a procedure to all the non zero counters
+	 *
+	 * @param procedure the procedure to apply
+	 */
+	public abstract void forEachNonZero(EntryProcedure procedure);
+
+
+	/**
+	 * This method adds all the counters of the current matrix to another one
+	 *
+	 * @param target the matrix to update (it must be at least as large as
+	 * the current one)
+	 */
+	protected void addTo(final HMPPCountMatrix target) {
+		forEachNonZero(new EntryProcedure() {
+			public void apply(int row, int column, long value) {
+				target.increment(row, column, value);
+			}
+		});
+	}
+
+
+	/**
+	 * This method adds all the counters of another matrix to the current one
+	 *
+	 * @param other the matrix to add (it must have the same sizes)
+	 */
+	public void add(HMPPCountMatrix other) {
+		other.addTo(this);
+	}
+
+
+	/**
+	 * This method enlarges the matrix, with more rows and columns. The new
+	 * counters are set to 0. If the current storage has no room for the new
+	 * size (or if the new size requires the sparse storage), the counters
+	 * are copied into a new matrix, with room for further enlargements.
+	 *
+	 * @param rows the new number of rows
+	 * @param columns the new number of columns
+	 * @return the enlarged matrix (the current one or a new one)
+	 */
+	public HMPPCountMatrix enlarge(int rows, int columns) {
+		boolean sparse = (long) rows * columns > SPARSE_CELLS;
+		if (sparse == isSparse() && hasRoom(rows, columns)) {
+			this.rows = rows;
+			this.columns = columns;
+			return this;
+		}
+		HMPPCountMatrix toret;
+		if (sparse) {
+			toret = new HMPPSparseCountMatrix(rows, columns);
+		} else {
+			toret = new HMPPDenseCountMatrix(rows, columns,
+					Math.max(rows, 2 * this.rows), Math.max(columns, 2 * this.columns),
+					isWide());
+		}
+		addTo(toret);
+		return toret;
+	}
+
+
+	/**
+	 * This method tells if the storage has room for a larger matrix
+	 *
+	 * @param rows the new number of rows
+	 * @param columns the new number of columns
+	 * @return true if the matrix can be enlarged in place
+	 */
+	protected abstract boolean hasRoom(int rows, int columns);
+
+
+	/**
+	 * This method returns the number of rows
+	 *
+	 * @return the number of rows
+	 */
+	public int rows() {
+		return rows;
+	}
+
+
+	/**
+	 * This method returns the number of columns
+	 *
+	 * @return the number of columns
+	 */
+	public int columns() {
+		return columns;
+	}
+
+
+	/**
+	 * This method builds a Colt copy of the matrix (dense or sparse, as the
+	 * current storage), for the components that still work with Colt
+	 * matrices
+	 *
+	 * @return a new matrix with the counters
+	 */
+	public DoubleMatrix2D toDoubleMatrix() {
+		final DoubleMatrix2D toret = isSparse() ?
+				DoubleFactory2D.sparse.make(rows, columns) :
+				DoubleFactory2D.dense.make(rows, columns);
+		forEachNonZero(new EntryProcedure() {
+			public void apply(int row, int column, long value) {
+				toret.setQuick(row, column, value);
+			}
+		});
+		return toret;
+	}
+}
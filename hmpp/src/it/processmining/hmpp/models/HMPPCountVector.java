@@ -0,0 +1,120 @@
+package it.processmining.hmpp.models;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+
+
+/**
+ * This class is a vector of exact counters, stored in an array of integers.
+ * It is the one dimensional version of {@link HMPPCountMatrix}. The array can
+ * be longer than the vector, to enlarge it without copying the counters.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPCountVector {
+
+
+	private final int[] values;
+	private int size;
+
+
+	/**
+	 * The class constructor, with all the counters set to 0
+	 *
+	 * @param size the number of counters
+	 */
+	public HMPPCountVector(int size) {
+		this(size, size);
+	}
+
+
+	/**
+	 * The class constructor, with all the counters set to 0
+	 *
+	 * @param size the number of counters
+	 * @param capacity the number of counters of the storage
+	 */
+	private HMPPCountVector(int size, int capacity) {
+		this.values = new int[capacity];
+		this.size = size;
+	}
+
+
+	/**
+	 * This method returns the value of a counter
+	 *
+	 * @param index the counter index
+	 * @return the counter value
+	 */
+	public int get(int index) {
+		return values[index];
+	}
+
+
+	/**
+	 * This method increments a counter
+	 *
+	 * @param index the counter index
+	 * @param delta the value to add
+	 */
+	public void increment(int index, int delta) {
+		values[index] += delta;
+	}
+
+
+	/**
+	 * This method adds all the counters of another vector to the current one
+	 *
+	 * @param other the vector to add (it must have the same size)
+	 */
+	public void add(HMPPCountVector other) {
+		for (int i = 0; i < size; i++) {
+			values[i] += other.values[i];
+		}
+	}
+
+
+	/**
+	 * This method enlarges the vector, with more counters. The new counters
+	 * are set to 0. If the current array is too short, the counters are
+	 * copied into a new vector, with room for further enlargements.
+	 *
+	 * @param size the new number of counters
+	 * @return the enlarged vector (the current one or a new one)
+	 */
+	public HMPPCountVector enlarge(int size) {
+		if (size <= values.length) {
+			this.size = size;
+			return this;
+		}
+		HMPPCountVector toret = new HMPPCountVector(size,
+				Math.max(size, 2 * values.length));
+		System.arraycopy(values, 0, toret.values, 0, this.size);
+		return toret;
+	}
+
+
+	/**
+	 * This method returns the number of counters
+	 *
+	 * @return the vector size
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * This method builds a Colt copy of the vector, for the components that
+	 * still work with Colt matrices
+	 *
+	 * @return a new dense vector with the counters
+	 */
+	public DoubleMatrix1D toDoubleMatrix() {
+		DoubleMatrix1D toret = DoubleFactory1D.dense.make(size);
+		for (int i = 0; i < size; i++) {
+			toret.setQuick(i, values[i]);
+		}
+		return toret;
+	}
+}
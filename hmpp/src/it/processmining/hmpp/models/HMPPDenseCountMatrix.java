@@ -0,0 +1,141 @@
+package it.processmining.hmpp.models;
+
+
+/**
+ * This class is the dense storage of a {@link HMPPCountMatrix}: all the
+ * counters are kept in a flat primitive array (of integers, or of longs for
+ * the wide matrices), with row-major indexing. The array can be larger than
+ * the matrix, to enlarge it without copying the counters.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPDenseCountMatrix extends HMPPCountMatrix {
+
+
+	private final int[] values;
+	private final long[] wideValues;
+	private final int capacityRows;
+	private final int stride;
+
+
+	/**
+	 * The class constructor, with all the counters set to 0
+	 *
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 * @param wide true to store long values, false for integer values
+	 */
+	public HMPPDenseCountMatrix(int rows, int columns, boolean wide) {
+		this(rows, columns, rows, columns, wide);
+	}
+
+
+	/**
+	 * The class constructor, with all the counters set to 0
+	 *
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 * @param capacityRows the number of rows of the storage
+	 * @param capacityColumns the number of columns of the storage
+	 * @param wide true to store long values, false for integer values
+	 */
+	public HMPPDenseCountMatrix(int rows, int columns, int capacityRows,
+			int capacityColumns, boolean wide) {
+		super(rows, columns);
+		this.capacityRows = capacityRows;
+		this.stride = capacityColumns;
+		if (wide) {
+			values = null;
+			wideValues = new long[capacityRows * capacityColumns];
+		} else {
+			values = new int[capacityRows * capacityColumns];
+			wideValues = null;
+		}
+	}
+
+
+	@Override
+	public long get(int row, int column) {
+		if (values != null) {
+			return values[row * stride + column];
+		}
+		return wideValues[row * stride + column];
+	}
+
+
+	@Override
+	public void increment(int row, int column, long delta) {
+		if (values != null) {
+			int cell = row * stride + column;
+			values[cell] = checkedSum(values[cell], delta);
+		} else {
+			wideValues[row * stride + column] += delta;
+		}
+	}
+
+
+	@Override
+	public boolean isSparse() {
+		return false;
+	}
+
+
+	@Override
+	protected boolean isWide() {
+		return wideValues != null;
+	}
+
+
+	@Override
+	protected boolean hasRoom(int rows, int columns) {
+		return rows <= capacityRows && columns <= stride;
+	}
+
+
+	@Override
+	protected void addTo(HMPPCountMatrix target) {
+		if (target instanceof HMPPDenseCountMatrix) {
+			HMPPDenseCountMatrix dense = (HMPPDenseCountMatrix) target;
+			if (dense.stride == stride && dense.capacityRows == capacityRows &&
+					dense.isWide() == isWide()) {
+				if (values != null) {
+					for (int i = 0; i < values.length; i++) {
+						dense.values[i] = checkedSum(dense.values[i], values[i]);
+					}
+				} else {
+					for (int i = 0; i < wideValues.length; i++) {
+						dense.wideValues[i] += wideValues[i];
+					}
+				}
+				return;
+			}
+		}
+		super.addTo(target);
+	}
+
+
+	/**
+	 * This method sums an integer counter and an increment, failing if the
+	 * result does not fit an integer (the counter should be wide)
+	 */
+	private static int checkedSum(int value, long delta) {
+		long sum = value + delta;
+		if (sum != (int) sum) {
+			throw new ArithmeticException("Counter overflow: " + value + " + " + delta);
+		}
+		return (int) sum;
+	}
+
+
+	@Override
+	public void forEachNonZero(EntryProcedure procedure) {
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				long value = get(i, j);
+				if (value != 0) {
+					procedure.apply(i, j, value);
+				}
+			}
+		}
+	}
+}
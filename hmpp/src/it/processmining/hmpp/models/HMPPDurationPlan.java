@@ -0,0 +1,101 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+
+/**
+ * This class records, for a control-flow variant, which couples of positions
+ * of a trace contribute to the activity times and to the overlapping times.
+ * Since these positions depend only on the order of the events, the plan is
+ * built once per variant and then applied to the timestamps of each of its
+ * process instances, without repeating the bookkeeping of the started and
+ * finished activities.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPDurationPlan {
+
+
+	/* Activity time entries */
+	private int[] activities = new int[8];
+	private int[] activityStarts = new int[8];
+	private int[] activityEnds = new int[8];
+	private int activitySize = 0;
+
+	/* Overlapping time entries */
+	private int[] overlapFirst = new int[8];
+	private int[] overlapSecond = new int[8];
+	private int[] overlapStarts = new int[8];
+	private int[] overlapEnds = new int[8];
+	private int overlapSize = 0;
+
+
+	/**
+	 * This method records an activity execution
+	 *
+	 * @param activity the activity index
+	 * @param startOffset the offset, in the trace, of the activity start
+	 * @param endOffset the offset, in the trace, of the activity complete
+	 */
+	public void addActivityTime(int activity, int startOffset, int endOffset) {
+		if (activitySize == activities.length) {
+			activities = Arrays.copyOf(activities, activitySize * 2);
+			activityStarts = Arrays.copyOf(activityStarts, activitySize * 2);
+			activityEnds = Arrays.copyOf(activityEnds, activitySize * 2);
+		}
+		activities[activitySize] = activity;
+		activityStarts[activitySize] = startOffset;
+		activityEnds[activitySize] = endOffset;
+		activitySize++;
+	}
+
+
+	/**
+	 * This method records an overlap between two activities
+	 *
+	 * @param first the index of the activity that completes
+	 * @param second the index of the activity still running
+	 * @param startOffset the offset, in the trace, of the second activity
+	 * start
+	 * @param endOffset the offset, in the trace, of the first activity
+	 * complete
+	 */
+	public void addOverlappingTime(int first, int second, int startOffset,
+			int endOffset) {
+		if (overlapSize == overlapFirst.length) {
+			overlapFirst = Arrays.copyOf(overlapFirst, overlapSize * 2);
+			overlapSecond = Arrays.copyOf(overlapSecond, overlapSize * 2);
+			overlapStarts = Arrays.copyOf(overlapStarts, overlapSize * 2);
+			overlapEnds = Arrays.copyOf(overlapEnds, overlapSize * 2);
+		}
+		overlapFirst[overlapSize] = first;
+		overlapSecond[overlapSize] = second;
+		overlapStarts[overlapSize] = startOffset;
+		overlapEnds[overlapSize] = endOffset;
+		overlapSize++;
+	}
+
+
+	/**
+	 * This method adds the activity times (in seconds, truncated for each
+	 * execution) and the overlapping times (in milliseconds) of a process
+	 * instance to the given counters
+	 *
+	 * @param store the trace store
+	 * @param from the position of the first entry of the process instance
+	 * @param target the counters to update
+	 */
+	public void apply(HMPPTraceStore store, int from,
+			HMPPBasicRelations target) {
+		for (int k = 0; k < activitySize; k++) {
+			long duration = store.getTimestamp(from + activityEnds[k]) -
+					store.getTimestamp(from + activityStarts[k]);
+			target.addActivityTime(activities[k], duration / 1000);
+		}
+		for (int k = 0; k < overlapSize; k++) {
+			long duration = store.getTimestamp(from + overlapEnds[k]) -
+					store.getTimestamp(from + overlapStarts[k]);
+			target.addOverlappingTime(overlapFirst[k], overlapSecond[k], duration);
+		}
+	}
+}
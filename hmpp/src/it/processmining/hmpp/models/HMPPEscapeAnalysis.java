@@ -0,0 +1,192 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+import org.processmining.framework.models.heuristics.HNSet;
+import org.processmining.framework.models.heuristics.HNSubSet;
+import org.processmining.framework.models.heuristics.HeuristicsNet;
+
+
+/**
+ * This class tells if, in a heuristics net, the end of the process can be
+ * reached from an event without executing another one. An event "escapes"
+ * if it is not the avoided one, it has no output (it is an end event) or,
+ * when none of its output subsets is just the avoided event, each of its
+ * output subsets (they are all activated) contains at least one event which
+ * escapes (only one of them is executed).
+ *
+ * For each avoided event, the escaping events are the least fixed point of
+ * this definition: they are computed all together, visiting each output
+ * subset once, propagating backward from the end events, and kept until
+ * the output sets of the net change (see {@link #outputSetsChanged()}).
+ * The answers are the same of the recursive search, along the paths without
+ * repeated events, of the original HeuristicsMiner, which is exponential
+ * on nets with many XOR splits.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPEscapeAnalysis {
+
+
+	private final HeuristicsNet net;
+	private final int size;
+
+	/* The output subsets, in compressed rows: the subsets of event x are
+	 * from subsetStart[x] to subsetStart[x + 1], the elements of subset s
+	 * are from elementStart[s] to elementStart[s + 1] */
+	private int[] subsetStart;
+	private int[] elementStart;
+	private int[] elements;
+	/* The subsets each event belongs to (and their owners) */
+	private int[] containingStart;
+	private int[] containing;
+	private int[] subsetOwner;
+
+	/* The escaping events, for each avoided event (null if not computed) */
+	private long[][] escapes;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param net the heuristics net to analyse
+	 */
+	public HMPPEscapeAnalysis(HeuristicsNet net) {
+		this.net = net;
+		this.size = net.size();
+		outputSetsChanged();
+	}
+
+
+	/**
+	 * This method tells if the end of the process can be reached from an
+	 * event without executing another one
+	 *
+	 * @param from the starting event
+	 * @param avoided the event to avoid
+	 * @return true if the end can be reached without the avoided event
+	 */
+	public boolean escapeToEndPossible(int from, int avoided) {
+		if (subsetStart == null) {
+			buildSubsets();
+		}
+		if (escapes[avoided] == null) {
+			escapes[avoided] = computeEscapes(avoided);
+		}
+		return (escapes[avoided][from >> 6] & (1L << from)) != 0;
+	}
+
+
+	/**
+	 * This method drops all the results, since the output sets of the net
+	 * have been changed
+	 */
+	public void outputSetsChanged() {
+		subsetStart = null;
+		escapes = new long[size][];
+	}
+
+
+	/**
+	 * This method computes the least fixed point of the escaping events
+	 */
+	private long[] computeEscapes(int avoided) {
+		long[] toret = new long[(size + 63) >> 6];
+		int[] unsatisfied = new int[size];
+		boolean[] eligible = new boolean[size];
+		boolean[] satisfied = new boolean[elementStart.length - 1];
+		int[] queue = new int[size];
+		int head = 0;
+		int tail = 0;
+		for (int x = 0; x < size; x++) {
+			boolean sink = true;
+			eligible[x] = (x != avoided);
+			for (int s = subsetStart[x]; s < subsetStart[x + 1]; s++) {
+				int subsetSize = elementStart[s + 1] - elementStart[s];
+				if (subsetSize > 0) {
+					sink = false;
+				}
+				if (subsetSize == 1 && elements[elementStart[s]] == avoided) {
+					/* x is connected only with the avoided event */
+					eligible[x] = false;
+				}
+			}
+			unsatisfied[x] = subsetStart[x + 1] - subsetStart[x];
+			if (eligible[x] && sink) {
+				toret[x >> 6] |= 1L << x;
+				queue[tail++] = x;
+			}
+		}
+		while (head < tail) {
+			int e = queue[head++];
+			for (int k = containingStart[e]; k < containingStart[e + 1]; k++) {
+				int s = containing[k];
+				if (!satisfied[s]) {
+					satisfied[s] = true;
+					int x = subsetOwner[s];
+					unsatisfied[x]--;
+					if (unsatisfied[x] == 0 && eligible[x] &&
+							(toret[x >> 6] & (1L << x)) == 0) {
+						toret[x >> 6] |= 1L << x;
+						queue[tail++] = x;
+					}
+				}
+			}
+		}
+		return toret;
+	}
+
+
+	/**
+	 * This method copies the output subsets of the net in the compressed
+	 * rows, with the reverse index
+	 */
+	private void buildSubsets() {
+		int subsets = 0;
+		int total = 0;
+		for (int x = 0; x < size; x++) {
+			HNSet set = net.getOutputSet(x);
+			if (set != null) {
+				subsets += set.size();
+				for (int s = 0; s < set.size(); s++) {
+					total += set.get(s).size();
+				}
+			}
+		}
+		subsetStart = new int[size + 1];
+		elementStart = new int[subsets + 1];
+		elements = new int[total];
+		subsetOwner = new int[subsets];
+		containingStart = new int[size + 1];
+		int s = 0;
+		int k = 0;
+		for (int x = 0; x < size; x++) {
+			subsetStart[x] = s;
+			HNSet set = net.getOutputSet(x);
+			for (int i = 0; set != null && i < set.size(); i++) {
+				HNSubSet subset = set.get(i);
+				elementStart[s] = k;
+				subsetOwner[s] = x;
+				for (int j = 0; j < subset.size(); j++) {
+					elements[k++] = subset.get(j);
+					containingStart[subset.get(j) + 1]++;
+				}
+				s++;
+			}
+		}
+		subsetStart[size] = s;
+		elementStart[s] = k;
+
+		/* Reverse index */
+		for (int e = 0; e < size; e++) {
+			containingStart[e + 1] += containingStart[e];
+		}
+		containing = new int[total];
+		int[] next = Arrays.copyOf(containingStart, size);
+		for (s = 0; s < subsets; s++) {
+			for (k = elementStart[s]; k < elementStart[s + 1]; k++) {
+				containing[next[elements[k]]++] = s;
+			}
+		}
+	}
+}
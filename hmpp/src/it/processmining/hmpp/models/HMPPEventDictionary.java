@@ -0,0 +1,368 @@
+package it.processmining.hmpp.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.processmining.framework.log.LogEvent;
+import org.processmining.framework.log.LogEvents;
+import org.processmining.framework.log.LogSummary;
+
+
+/**
+ * This class is the interned dictionary of the log events and activities. It
+ * is built once per log and maps each (element, type) couple to its event
+ * index (the same index of the log events object) and each activity name to
+ * its activity index (the same index of the transitions array), so that all
+ * the counting procedures can work on plain integers.
+ *
+ * The dictionary can also grow, when new events are observed after its
+ * construction (as in the online mining): new events are appended to the
+ * log events object and new activities to the activities list, so all the
+ * existing indexes remain valid.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPEventDictionary {
+
+
+	public static final String START = "start";
+	public static final String COMPLETE = "complete";
+
+	/* Event type codes */
+	public static final int TYPE_START = 0;
+	public static final int TYPE_COMPLETE = 1;
+
+	private LogEvents events;
+	private ArrayList<String> activities;
+	private int eventsSize = 0;
+
+	/* Lookup tables from strings to indexes */
+	private HashMap<String, Integer> activityIndex;
+	private HashMap<String, Integer> typeIndex;
+	private int[][] eventIndex;
+
+	/* Lookup tables from event index to activity data */
+	private int[] eventActivity;
+	private int[] eventType;
+
+	/* Lookup tables from activity index to event index */
+	private int[] startEvent;
+	private int[] completeEvent;
+
+
+	/**
+	 * The class constructor, for an empty dictionary
+	 */
+	public HMPPEventDictionary() {
+		this(new LogEvents(), new String[0]);
+	}
+
+
+	/**
+	 * The class constructor. The log events of the summary are copied, so
+	 * the online counting never changes the ones of the log.
+	 *
+	 * @param summary the summary of the log to analyse
+	 */
+	public HMPPEventDictionary(LogSummary summary) {
+		this(copy(summary.getLogEvents()), summary.getModelElements());
+	}
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param events the log events object
+	 * @param modelElements the names of all the activities
+	 */
+	public HMPPEventDictionary(LogEvents events, String[] modelElements) {
+		this.events = events;
+		this.activities = new ArrayList<String>();
+
+		activityIndex = new HashMap<String, Integer>();
+		typeIndex = new HashMap<String, Integer>();
+		typeIndex.put(START, TYPE_START);
+		typeIndex.put(COMPLETE, TYPE_COMPLETE);
+
+		int capacity = Math.max(8, events.size());
+		eventActivity = new int[capacity];
+		eventType = new int[capacity];
+		capacity = Math.max(8, modelElements.length);
+		startEvent = new int[capacity];
+		completeEvent = new int[capacity];
+		eventIndex = new int[capacity][];
+
+		for (String activity : modelElements) {
+			internActivity(activity);
+		}
+		for (int i = 0; i < events.size(); i++) {
+			LogEvent le = events.getEvent(i);
+			internEvent(activityIndex.get(le.getModelElementName()),
+					le.getEventType());
+		}
+	}
+
+
+	/**
+	 * This method adds a new event (and, if required, its activity) to the
+	 * dictionary. If the event is already known, its index is returned.
+	 *
+	 * @param element the model element name
+	 * @param type the event type
+	 * @return the event index
+	 */
+	public int addEvent(String element, String type) {
+		int event = getEventId(element, type);
+		if (event >= 0) {
+			return event;
+		}
+		Integer activity = activityIndex.get(element);
+		if (activity == null) {
+			activity = internActivity(element);
+		}
+		events.add(new LogEvent(element, type, 0));
+		return internEvent(activity, type);
+	}
+
+
+	/**
+	 * This method registers a new activity
+	 *
+	 * @param name the activity name
+	 * @return the activity index
+	 */
+	private int internActivity(String name) {
+		int activity = activities.size();
+		if (activity == startEvent.length) {
+			startEvent = Arrays.copyOf(startEvent, activity * 2);
+			completeEvent = Arrays.copyOf(completeEvent, activity * 2);
+			eventIndex = Arrays.copyOf(eventIndex, activity * 2);
+		}
+		activities.add(name);
+		activityIndex.put(name, activity);
+		startEvent[activity] = -1;
+		completeEvent[activity] = -1;
+		eventIndex[activity] = new int[typeIndex.size()];
+		Arrays.fill(eventIndex[activity], -1);
+		return activity;
+	}
+
+
+	/**
+	 * This method registers the next event of the log events object
+	 *
+	 * @param activity the activity index (or null if the event activity is
+	 * unknown)
+	 * @param typeName the event type
+	 * @return the event index
+	 */
+	private int internEvent(Integer activity, String typeName) {
+		Integer type = typeIndex.get(typeName);
+		if (type == null) {
+			type = typeIndex.size();
+			typeIndex.put(typeName, type);
+			for (int i = 0; i < activities.size(); i++) {
+				eventIndex[i] = Arrays.copyOf(eventIndex[i], type + 1);
+				eventIndex[i][type] = -1;
+			}
+		}
+
+		int event = eventsSize;
+		if (event == eventActivity.length) {
+			eventActivity = Arrays.copyOf(eventActivity, event * 2);
+			eventType = Arrays.copyOf(eventType, event * 2);
+		}
+		eventActivity[event] = (activity == null) ? -1 : activity;
+		eventType[event] = type;
+		eventsSize++;
+
+		if (activity != null) {
+			if (eventIndex[activity][type] == -1) {
+				eventIndex[activity][type] = event;
+			}
+			if (type == TYPE_START && startEvent[activity] == -1) {
+				startEvent[activity] = event;
+			} else if (type == TYPE_COMPLETE && completeEvent[activity] == -1) {
+				completeEvent[activity] = event;
+			}
+		}
+		return event;
+	}
+
+
+	/**
+	 * This method returns the index of an event
+	 *
+	 * @param element the model element name
+	 * @param type the event type
+	 * @return the event index, or -1 if the event is not in the log
+	 */
+	public int getEventId(String element, String type) {
+		Integer activity = activityIndex.get(element);
+		Integer t = typeIndex.get(type);
+		if (activity == null || t == null) {
+			return -1;
+		}
+		return eventIndex[activity][t];
+	}
+
+
+	/**
+	 * This method returns the index of an activity
+	 *
+	 * @param name the activity name
+	 * @return the activity index, or -1 if the activity is not in the log
+	 */
+	public int getActivityId(String name) {
+		Integer activity = activityIndex.get(name);
+		return (activity == null) ? -1 : activity;
+	}
+
+
+	/**
+	 * This method returns the activity of an event
+	 *
+	 * @param event the event index
+	 * @return the activity index
+	 */
+	public int getActivity(int event) {
+		return eventActivity[event];
+	}
+
+
+	/**
+	 * This method returns the type code of an event
+	 *
+	 * @param event the event index
+	 * @return the event type code
+	 */
+	public int getType(int event) {
+		return eventType[event];
+	}
+
+
+	/**
+	 * This method tells if an event is the start of its activity
+	 *
+	 * @param event the event index
+	 * @return true if the event is a start event
+	 */
+	public boolean isStart(int event) {
+		return eventType[event] == TYPE_START;
+	}
+
+
+	/**
+	 * This method tells if an event is the completion of its activity
+	 *
+	 * @param event the event index
+	 * @return true if the event is a complete event
+	 */
+	public boolean isComplete(int event) {
+		return eventType[event] == TYPE_COMPLETE;
+	}
+
+
+	/**
+	 * This method tells if two events refer to the same activity
+	 *
+	 * @param i the first event index
+	 * @param j the second event index
+	 * @return true if the two events have the same model element
+	 */
+	public boolean sameActivity(int i, int j) {
+		return eventActivity[i] == eventActivity[j];
+	}
+
+
+	/**
+	 * This method returns the start event of an activity
+	 *
+	 * @param activity the activity index
+	 * @return the start event index, or -1 if there is no such event
+	 */
+	public int getStartEvent(int activity) {
+		return startEvent[activity];
+	}
+
+
+	/**
+	 * This method returns the complete event of an activity
+	 *
+	 * @param activity the activity index
+	 * @return the complete event index, or -1 if there is no such event
+	 */
+	public int getCompleteEvent(int activity) {
+		return completeEvent[activity];
+	}
+
+
+	/**
+	 * This method returns the log events object
+	 *
+	 * @return the log events
+	 */
+	public LogEvents getEvents() {
+		return events;
+	}
+
+
+	/**
+	 * This method returns a copy of the log events object, which does not
+	 * change with the events and the occurrences added later (e.g. for a
+	 * heuristics net)
+	 *
+	 * @return a new log events object
+	 */
+	public LogEvents copyEvents() {
+		return copy(events);
+	}
+
+
+	/**
+	 * This method copies some log events (name, type and occurrences)
+	 *
+	 * @param events the log events to copy
+	 * @return a new log events object
+	 */
+	private static LogEvents copy(LogEvents events) {
+		LogEvents toret = new LogEvents();
+		for (int i = 0; i < events.size(); i++) {
+			LogEvent le = events.getEvent(i);
+			toret.add(new LogEvent(le.getModelElementName(), le.getEventType(),
+					le.getOccurrenceCount()));
+		}
+		return toret;
+	}
+
+
+	/**
+	 * This method returns the list of the activity names
+	 *
+	 * @return the activities list
+	 */
+	public ArrayList<String> getActivities() {
+		return activities;
+	}
+
+
+	/**
+	 * This method returns the number of events
+	 *
+	 * @return the number of events
+	 */
+	public int eventsSize() {
+		return eventsSize;
+	}
+
+
+	/**
+	 * This method returns the number of activities
+	 *
+	 * @return the number of activities
+	 */
+	public int activitiesSize() {
+		return activities.size();
+	}
+}
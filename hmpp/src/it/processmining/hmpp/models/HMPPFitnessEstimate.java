@@ -0,0 +1,125 @@
+package it.processmining.hmpp.models;
+
+import java.text.DecimalFormat;
+
+
+/**
+ * This class is an estimate of the fitness of a net, computed replaying a
+ * sample of the control-flow variants of the log (see
+ * {@link HMPPFitnessSampler}), with its confidence interval. When all the
+ * variants have been replayed the estimate is exact and the interval is
+ * just the fitness.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPFitnessEstimate {
+
+
+	private final double fitness;
+	private final double lowerBound;
+	private final double upperBound;
+	private final int replayedVariants;
+	private final int variants;
+	private final boolean exact;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param fitness the estimated fitness
+	 * @param lowerBound the lower bound of the confidence interval
+	 * @param upperBound the upper bound of the confidence interval
+	 * @param replayedVariants the number of variants replayed
+	 * @param variants the number of variants of the log
+	 */
+	public HMPPFitnessEstimate(double fitness, double lowerBound,
+			double upperBound, int replayedVariants, int variants) {
+		this.fitness = fitness;
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+		this.replayedVariants = replayedVariants;
+		this.variants = variants;
+		this.exact = (replayedVariants == variants);
+	}
+
+
+	/**
+	 * This method returns the estimated fitness
+	 *
+	 * @return the fitness
+	 */
+	public double getFitness() {
+		return fitness;
+	}
+
+
+	/**
+	 * This method returns the lower bound of the confidence interval
+	 *
+	 * @return the lower bound
+	 */
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+
+	/**
+	 * This method returns the upper bound of the confidence interval
+	 *
+	 * @return the upper bound
+	 */
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+
+	/**
+	 * This method returns the width of the confidence interval
+	 *
+	 * @return the interval width
+	 */
+	public double getWidth() {
+		return upperBound - lowerBound;
+	}
+
+
+	/**
+	 * This method returns the number of variants replayed so far
+	 *
+	 * @return the replayed variants
+	 */
+	public int getReplayedVariants() {
+		return replayedVariants;
+	}
+
+
+	/**
+	 * This method returns the number of variants of the log
+	 *
+	 * @return the variants
+	 */
+	public int getVariants() {
+		return variants;
+	}
+
+
+	/**
+	 * This method tells if all the variants have been replayed
+	 *
+	 * @return true if the fitness is exact
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+
+	@Override
+	public String toString() {
+		DecimalFormat f = new DecimalFormat("0.000");
+		if (exact) {
+			return f.format(fitness);
+		}
+		return f.format(fitness) + " [" + f.format(lowerBound) + ", " +
+				f.format(upperBound) + "]";
+	}
+}
@@ -0,0 +1,226 @@
+package it.processmining.hmpp.models;
+
+import java.util.Random;
+
+import org.processmining.framework.models.heuristics.HeuristicsNet;
+
+
+/**
+ * This class estimates the fitness of a net (the one of
+ * {@link HMPPReplayFitness}) replaying a growing, stratified sample of the
+ * control-flow variants of the log, so that a first estimate, with its
+ * confidence interval, is available long before the whole log is replayed.
+ *
+ * The fitness is the sum of the contributions of the variants, each one
+ * proportional to its multiplicity. The variants are grouped in strata by
+ * multiplicity (1, 2-3, 4-7, ...) and sampled, in random order, within each
+ * stratum: each stratum first gets a few variants, then new variants are
+ * assigned to the strata proportionally to their largest possible
+ * contribution. The estimate of each stratum is the mean contribution of its
+ * sampled variants, with the finite population variance; the strata replayed
+ * completely are exact. When all the variants have been replayed the estimate
+ * is exactly the fitness computed by {@link HMPPReplayFitness}.
+ *
+ * The sampler is not thread safe: it should be refined by just one thread.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPFitnessSampler {
+
+
+	/* The quantile of the normal distribution for the 95% confidence */
+	public static final double CONFIDENCE_Z = 1.96;
+	/* Variants sampled in each stratum before trusting its variance */
+	private static final int MIN_STRATUM_SAMPLE = 5;
+	/* Number of multiplicity classes (powers of two) */
+	private static final int STRATA = 32;
+
+	private final HMPPTraceStore store;
+	private final HMPPVariantIndex variants;
+	private final HMPPReplayFitness.Replayer replayer;
+
+	/* The variants of stratum h, shuffled, are from
+	 * order[stratumStart[h]] to order[stratumStart[h + 1]] */
+	private final int[] stratumStart = new int[STRATA + 1];
+	private final int[] order;
+	/* The largest possible contribution of a variant and the sum of them,
+	 * for each stratum */
+	private final double[] maxContribution = new double[STRATA];
+	private final double[] allocationWeight = new double[STRATA];
+
+	/* The sampled variants and their contributions, for each stratum */
+	private final int[] sampled = new int[STRATA];
+	private final double[] sum = new double[STRATA];
+	private final double[] sumSquares = new double[STRATA];
+	/* The counters of all the replayed variants */
+	private int replayed = 0;
+	private long parsed = 0;
+	private long properlyCompleted = 0;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param net the net to evaluate
+	 * @param store the process instances of the log
+	 * @param variants the control-flow variants of the log
+	 * @param seed the seed of the sampling order
+	 */
+	public HMPPFitnessSampler(HeuristicsNet net, HMPPTraceStore store,
+			HMPPVariantIndex variants, long seed) {
+		this.store = store;
+		this.variants = variants;
+		this.replayer = new HMPPReplayFitness(net).newReplayer();
+
+		int count = variants.variants();
+		int[] stratum = new int[count];
+		for (int v = 0; v < count; v++) {
+			stratum[v] = 31 - Integer.numberOfLeadingZeros(variants.getMultiplicity(v));
+			stratumStart[stratum[v] + 1]++;
+			double contribution = upperContribution(v);
+			maxContribution[stratum[v]] = Math.max(maxContribution[stratum[v]], contribution);
+			allocationWeight[stratum[v]] += contribution;
+		}
+		for (int h = 0; h < STRATA; h++) {
+			stratumStart[h + 1] += stratumStart[h];
+		}
+		order = new int[count];
+		int[] fill = new int[STRATA];
+		System.arraycopy(stratumStart, 0, fill, 0, STRATA);
+		for (int v = 0; v < count; v++) {
+			order[fill[stratum[v]]++] = v;
+		}
+
+		/* Random order within each stratum */
+		Random random = new Random(seed);
+		for (int h = 0; h < STRATA; h++) {
+			for (int k = stratumStart[h + 1] - 1; k > stratumStart[h]; k--) {
+				int j = stratumStart[h] + random.nextInt(k - stratumStart[h] + 1);
+				int swap = order[k];
+				order[k] = order[j];
+				order[j] = swap;
+			}
+		}
+	}
+
+
+	/**
+	 * This method replays new variants for about the given time (but the
+	 * first call always replays the minimum sample of each stratum) and
+	 * returns the new estimate
+	 *
+	 * @param millis the time to spend, in milliseconds
+	 * @return the fitness estimate
+	 */
+	public HMPPFitnessEstimate refine(long millis) {
+		long deadline = System.nanoTime() + millis * 1000000L;
+		int h = nextStratum();
+		while (h >= 0 && (sampled[h] < MIN_STRATUM_SAMPLE ||
+				System.nanoTime() < deadline)) {
+			replay(h);
+			h = nextStratum();
+		}
+		return getEstimate();
+	}
+
+
+	/**
+	 * This method returns the estimate with the variants replayed so far
+	 *
+	 * @return the fitness estimate
+	 */
+	public HMPPFitnessEstimate getEstimate() {
+		int count = variants.variants();
+		if (replayed == count) {
+			double fitness = HMPPReplayFitness.fitness(parsed, properlyCompleted, store);
+			return new HMPPFitnessEstimate(fitness, fitness, fitness, count, count);
+		}
+		double total = 0;
+		double variance = 0;
+		for (int h = 0; h < STRATA; h++) {
+			int size = stratumStart[h + 1] - stratumStart[h];
+			int n = sampled[h];
+			if (n == size) {
+				total += sum[h];
+			} else if (n >= MIN_STRATUM_SAMPLE) {
+				double mean = sum[h] / n;
+				double s2 = Math.max(0, (sumSquares[h] - sum[h] * mean) / (n - 1));
+				total += size * mean;
+				variance += (double) size * size * (1 - (double) n / size) * s2 / n;
+			} else {
+				/* Too few values: the contributions of the variants not
+				 * replayed can be anywhere between 0 and the largest one */
+				double unknown = (size - n) * maxContribution[h];
+				total += sum[h] + unknown / 2;
+				variance += unknown * unknown / 4;
+			}
+		}
+		double halfWidth = CONFIDENCE_Z * Math.sqrt(variance);
+		return new HMPPFitnessEstimate(Math.min(1, Math.max(0, total)),
+				Math.max(0, total - halfWidth), Math.min(1, total + halfWidth),
+				replayed, count);
+	}
+
+
+	/**
+	 * This method returns the stratum of the next variant to replay: first
+	 * the strata without their minimum sample, then the one with the highest
+	 * allocation weight per sampled variant
+	 *
+	 * @return the stratum, -1 if all the variants have been replayed
+	 */
+	private int nextStratum() {
+		int best = -1;
+		boolean bestMinimum = false;
+		double bestPriority = -1;
+		for (int h = 0; h < STRATA; h++) {
+			int size = stratumStart[h + 1] - stratumStart[h];
+			if (sampled[h] == size) {
+				continue;
+			}
+			boolean minimum = sampled[h] < MIN_STRATUM_SAMPLE;
+			double priority = allocationWeight[h] / (sampled[h] + 1);
+			if (best < 0 || (minimum && !bestMinimum) ||
+					(minimum == bestMinimum && priority > bestPriority)) {
+				best = h;
+				bestMinimum = minimum;
+				bestPriority = priority;
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	 * This method replays the next variant of a stratum
+	 */
+	private void replay(int h) {
+		int v = order[stratumStart[h] + sampled[h]];
+		int multiplicity = variants.getMultiplicity(v);
+		replayer.replay(store, variants, v);
+		sampled[h]++;
+		replayed++;
+		parsed += (long) replayer.lastParsed * multiplicity;
+		if (replayer.lastProperlyCompleted) {
+			properlyCompleted += multiplicity;
+		}
+		double contribution = multiplicity * (
+				HMPPReplayFitness.PARSED_WEIGHT * replayer.lastParsed / store.size() +
+				HMPPReplayFitness.PROPERLY_COMPLETED_WEIGHT * (replayer.lastProperlyCompleted ? 1 : 0) / store.cases());
+		sum[h] += contribution;
+		sumSquares[h] += contribution * contribution;
+	}
+
+
+	/**
+	 * This method returns the contribution of a variant if all its tasks are
+	 * parsed and it is properly completed
+	 */
+	private double upperContribution(int v) {
+		int c = variants.getRepresentative(v);
+		int length = store.caseEnd(c) - store.caseStart(c);
+		return variants.getMultiplicity(v) * (
+				HMPPReplayFitness.PARSED_WEIGHT * length / store.size() +
+				HMPPReplayFitness.PROPERLY_COMPLETED_WEIGHT / store.cases());
+	}
+}
@@ -25,6 +25,8 @@ public class HMPPHeuristicsNet extends HeuristicsNet {
 	private String helpString;
 	private DoubleMatrix2D dependencyMeasures;
 	private DoubleMatrix2D directSuccessionCount;
+	/* The canonical structure (null when it must be computed again) */
+	private HMPPNetStructure structure;
 
 	
 	/**
@@ -43,6 +45,58 @@ public class HMPPHeuristicsNet extends HeuristicsNet {
 	}
 
 	
+	/**
+	 * This method to get the canonical form of the net structure, computed
+	 * again only after an input or output set has been replaced
+	 * 
+	 * @return the net structure
+	 */
+	public HMPPNetStructure getStructure() {
+		if (structure == null) {
+			structure = new HMPPNetStructure(this);
+		}
+		return structure;
+	}
+	
+	
+	@Override
+	public boolean setInputSet(int index, HNSet set) {
+		structure = null;
+		return super.setInputSet(index, set);
+	}
+	
+	
+	@Override
+	public boolean setOutputSet(int index, HNSet set) {
+		structure = null;
+		return super.setOutputSet(index, set);
+	}
+	
+	
+	/**
+	 * Two HeuristicsNet++ are equal if they have the same structure (see
+	 * {@link HMPPNetStructure}): the sets of the nets must not be modified
+	 * without replacing them with {@link #setInputSet(int, HNSet)} and
+	 * {@link #setOutputSet(int, HNSet)}.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o instanceof HMPPHeuristicsNet) {
+			return getStructure().equals(((HMPPHeuristicsNet) o).getStructure());
+		}
+		return super.equals(o);
+	}
+	
+	
+	@Override
+	public int hashCode() {
+		return getStructure().hashCode();
+	}
+	
+	
 	@Override
 	public String toStringWithEvents() {
 		StringBuffer sb = new StringBuffer();
@@ -0,0 +1,208 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+
+/**
+ * This class keeps the state of the sweep over the events of a process
+ * instance: the activities started but not finished yet (the open
+ * intervals, with the number of open instances and the position of the last
+ * start) and the activities finished since the last start. All the sets are
+ * kept in primitive arrays indexed by activity, with a dense list of their
+ * members, so each event costs time proportional to the number of open
+ * activities, without any allocation. The same object is reused for all the
+ * process instances (see {@link #reset()}).
+ *
+ * The finished activities are always the last run of consecutive
+ * completions, and each run has its own epoch. For the length two loops,
+ * the sweep keeps a window of the last two runs each activity has been
+ * finished in, and the run each activity has been started after: so
+ * checking if a start closes a pattern A, B, A of direct successions costs
+ * constant time.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPIntervalSweep {
+
+
+	/* Open intervals */
+	private final int[] openCount;
+	private final int[] lastStart;
+	private final int[] open;
+	private final int[] openPosition;
+	private int openSize = 0;
+
+	/* Finished activities (members are marked with the current epoch) */
+	private final int[] finished;
+	private final int[] finishedEpoch;
+	private int finishedSize = 0;
+	private int epoch = 1;
+
+	/* Length two loops window: the epochs of the last two runs each
+	 * activity has been finished in, the epoch of the run finished before
+	 * its last start, and the first epoch of the process instance */
+	private final int[] previousFinishedEpoch;
+	private final int[] startEpoch;
+	private int instanceEpoch = 1;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param activitiesSize the number of activities
+	 */
+	public HMPPIntervalSweep(int activitiesSize) {
+		openCount = new int[activitiesSize];
+		lastStart = new int[activitiesSize];
+		open = new int[activitiesSize];
+		openPosition = new int[activitiesSize];
+		finished = new int[activitiesSize];
+		finishedEpoch = new int[activitiesSize];
+		previousFinishedEpoch = new int[activitiesSize];
+		startEpoch = new int[activitiesSize];
+	}
+
+
+	/**
+	 * This method returns the number of activities the sweep can handle
+	 *
+	 * @return the number of activities
+	 */
+	public int capacity() {
+		return openCount.length;
+	}
+
+
+	/**
+	 * This method empties all the sets, for a new process instance
+	 */
+	public void reset() {
+		for (int k = 0; k < openSize; k++) {
+			openCount[open[k]] = 0;
+		}
+		openSize = 0;
+		clearFinished();
+		instanceEpoch = epoch;
+	}
+
+
+	/**
+	 * This method records the start of an activity: it is overlapped with
+	 * all the open activities (itself included, if already open), so the
+	 * parallel counts of all these couples are incremented
+	 *
+	 * @param activity the activity index
+	 * @param position the offset, in the trace, of the start
+	 * @param parallels the parallel counts to update (kept symmetric)
+	 * @param weight the number of process instances with this trace
+	 */
+	public void start(int activity, int position, HMPPCountMatrix parallels,
+			int weight) {
+		for (int k = 0; k < openSize; k++) {
+			int act = open[k];
+			parallels.increment(act, activity, weight);
+			if (act != activity) {
+				parallels.increment(activity, act, weight);
+			}
+		}
+		if (openCount[activity] == 0) {
+			openPosition[activity] = openSize;
+			open[openSize++] = activity;
+		}
+		openCount[activity]++;
+		lastStart[activity] = position;
+		startEpoch[activity] = epoch;
+	}
+
+
+	/**
+	 * This method records the completion of an activity. If the activity is
+	 * open, one of its instances is closed, its execution time is added to
+	 * the plan and so are its overlaps with all the other open activities
+	 * (from their last start to this completion).
+	 *
+	 * @param activity the activity index
+	 * @param position the offset, in the trace, of the completion
+	 * @param plan the duration plan to update
+	 */
+	public void complete(int activity, int position, HMPPDurationPlan plan) {
+		if (openCount[activity] > 0) {
+			plan.addActivityTime(activity, lastStart[activity], position);
+			openCount[activity]--;
+			if (openCount[activity] == 0) {
+				/* Swap remove from the open list */
+				int last = open[--openSize];
+				open[openPosition[activity]] = last;
+				openPosition[last] = openPosition[activity];
+			}
+			for (int k = 0; k < openSize; k++) {
+				int act = open[k];
+				if (act != activity) {
+					plan.addOverlappingTime(activity, act, lastStart[act], position);
+				}
+			}
+		}
+		if (finishedEpoch[activity] != epoch) {
+			previousFinishedEpoch[activity] = finishedEpoch[activity];
+			finishedEpoch[activity] = epoch;
+			finished[finishedSize++] = activity;
+		}
+	}
+
+
+	/**
+	 * This method empties the set of the finished activities
+	 */
+	public void clearFinished() {
+		finishedSize = 0;
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(finishedEpoch, 0);
+			Arrays.fill(previousFinishedEpoch, 0);
+			Arrays.fill(startEpoch, 0);
+			epoch = 0;
+			instanceEpoch = 0;
+		}
+		epoch++;
+	}
+
+
+	/**
+	 * This method returns the number of finished activities
+	 *
+	 * @return the number of finished activities
+	 */
+	public int finishedSize() {
+		return finishedSize;
+	}
+
+
+	/**
+	 * This method returns a finished activity
+	 *
+	 * @param k the position in the set, from 0 to {@link #finishedSize()}
+	 * @return the activity index
+	 */
+	public int getFinished(int k) {
+		return finished[k];
+	}
+
+
+	/**
+	 * This method tells if the start of an activity, directly after a
+	 * finished one, closes a length two loop: the activity was finished in
+	 * the run of completions right before the last start of the finished
+	 * activity (so activity, finished, activity are direct successions).
+	 * This method must be called before {@link #start(int, int,
+	 * HMPPCountMatrix, int)} records the start of the activity.
+	 *
+	 * @param activity the activity which is starting
+	 * @param finished a finished activity, different from the starting one
+	 * @return true if the two activities form a length two loop
+	 */
+	public boolean closesLengthTwoLoop(int activity, int finished) {
+		int before = startEpoch[finished];
+		return before > instanceEpoch &&
+				(finishedEpoch[activity] == before ||
+				 previousFinishedEpoch[activity] == before);
+	}
+}
@@ -0,0 +1,368 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+
+/**
+ * This class keeps all the dependency, length one loop and length two loop
+ * measures of a set of counters, computed once for a dependency divisor, an
+ * intervals overlap multiplier and the successions the dependency measures
+ * are based on (the only parameters they depend on), so
+ * that all the consumers (the thresholds histograms and the net
+ * construction) just read them. The best input and output connection of
+ * each event, which depend only on the dependency measures, are computed
+ * here as well: all the other parameters are thresholds, applied on top of
+ * these values when the net is built.
+ *
+ * Only the couples which can have a measure different from 0 are evaluated:
+ * the dependency measure is 0 when the two direct succession counts are
+ * equal (e.g. both 0), the length two loop measure is 0 when there is no
+ * A&gt;B&gt;A pattern. This holds only with a positive dependency divisor
+ * and a non negative intervals overlap multiplier: otherwise, all the
+ * couples are evaluated.
+ *
+ * The dependency measures can be based on the decay weighted causal
+ * successions instead of the direct ones: the succession from A to B is
+ * the causal succession from the complete event of A to the start event of
+ * B, compared with the one from the complete event of B to the start event
+ * of A.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPMeasureCache {
+
+
+	private final int dependencyDivisor;
+	private final double intervalsOverlapMultiplier;
+	private final boolean useCausalSuccession;
+
+	private final HMPPMeasureMatrix dependency;
+	private final double[] l1l;
+	private final HMPPMeasureMatrix l2l;
+
+	/* Best connections */
+	private final double[] bestInputMeasure;
+	private final double[] bestOutputMeasure;
+	private final int[] bestInputEvent;
+	private final int[] bestOutputEvent;
+
+
+	/**
+	 * The class constructor, which computes all the measures
+	 *
+	 * @param dictionary the events dictionary
+	 * @param relations the counters
+	 * @param dependencyDivisor the dependency divisor
+	 * @param intervalsOverlapMultiplier the intervals overlap multiplier
+	 * @param useCausalSuccession true to base the dependency measures on the
+	 * causal successions (only if they have been counted)
+	 */
+	public HMPPMeasureCache(HMPPEventDictionary dictionary,
+			HMPPBasicRelations relations, int dependencyDivisor,
+			double intervalsOverlapMultiplier, boolean useCausalSuccession) {
+		this.dependencyDivisor = dependencyDivisor;
+		this.intervalsOverlapMultiplier = intervalsOverlapMultiplier;
+		this.useCausalSuccession = useCausalSuccession;
+		int eventsSize = dictionary.eventsSize();
+		boolean allCouples = dependencyDivisor <= 0 || !(intervalsOverlapMultiplier >= 0);
+
+		/* Length one loops */
+		HMPPCountMatrix directSuccessionCount = relations.getDirectSuccessionCount();
+		l1l = new double[eventsSize];
+		for (int i = 0; i < eventsSize; i++) {
+			l1l[i] = ((double) directSuccessionCount.get(i, i)) /
+					(directSuccessionCount.get(i, i) + dependencyDivisor);
+		}
+
+		/* Dependency measures: the couples with at least one direct (or
+		 * causal) succession and the start and complete events of each
+		 * activity */
+		KeyList keys = allCouples ? allKeys(eventsSize) : symmetricKeys(directSuccessionCount);
+		if (causal(relations) && !allCouples) {
+			addCausalKeys(dictionary, relations.getCausalSuccessionUnits(), keys);
+		}
+		for (int a = 0; a < dictionary.activitiesSize(); a++) {
+			int start = dictionary.getStartEvent(a);
+			int complete = dictionary.getCompleteEvent(a);
+			if (start >= 0 && complete >= 0) {
+				keys.add(HMPPMeasureMatrix.key(start, complete));
+			}
+		}
+		keys.sort();
+		double[] values = new double[keys.size];
+		for (int k = 0; k < keys.size; k++) {
+			int i = (int) (keys.keys[k] >>> 32);
+			int j = (int) keys.keys[k];
+			values[k] = dependencyMeasure(dictionary, relations, i, j);
+		}
+		dependency = new HMPPMeasureMatrix(eventsSize, keys.keys, values, keys.size);
+
+		/* Length two loops measures (without the length one loops check) */
+		HMPPCountMatrix succession2Count = relations.getSuccession2Count();
+		keys = allCouples ? allKeys(eventsSize) : symmetricKeys(succession2Count);
+		keys.sort();
+		values = new double[keys.size];
+		for (int k = 0; k < keys.size; k++) {
+			int i = (int) (keys.keys[k] >>> 32);
+			int j = (int) keys.keys[k];
+			values[k] = ((double) succession2Count.get(i, j) + succession2Count.get(j, i)) /
+					(succession2Count.get(i, j) +
+					 succession2Count.get(j, i) +
+					 dependencyDivisor);
+		}
+		l2l = new HMPPMeasureMatrix(eventsSize, keys.keys, values, keys.size);
+
+		/* Best input and output connections */
+		bestInputMeasure = new double[eventsSize];
+		bestOutputMeasure = new double[eventsSize];
+		bestInputEvent = new int[eventsSize];
+		bestOutputEvent = new int[eventsSize];
+		Arrays.fill(bestInputMeasure, -10.0);
+		Arrays.fill(bestOutputMeasure, -10.0);
+		Arrays.fill(bestInputEvent, -1);
+		Arrays.fill(bestOutputEvent, -1);
+		for (int i = 0; i < eventsSize; i++) {
+			for (int j = 0; j < eventsSize; j++) {
+				if (i != j) {
+					double measure = dependency.get(i, j);
+					if (measure > bestOutputMeasure[i]) {
+						bestOutputMeasure[i] = measure;
+						bestOutputEvent[i] = j;
+					}
+					if (measure > bestInputMeasure[j]) {
+						bestInputMeasure[j] = measure;
+						bestInputEvent[j] = i;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * This method tells if the cached measures have been computed with the
+	 * given parameters
+	 *
+	 * @param dependencyDivisor the dependency divisor
+	 * @param intervalsOverlapMultiplier the intervals overlap multiplier
+	 * @param useCausalSuccession the use of the causal successions
+	 * @return true if the cache can be used
+	 */
+	public boolean isValid(int dependencyDivisor,
+			double intervalsOverlapMultiplier, boolean useCausalSuccession) {
+		return this.dependencyDivisor == dependencyDivisor &&
+				this.intervalsOverlapMultiplier == intervalsOverlapMultiplier &&
+				this.useCausalSuccession == useCausalSuccession;
+	}
+
+
+	/**
+	 * This method returns the dependency measure between two events
+	 *
+	 * @param i the first event index
+	 * @param j the second event index
+	 * @return the dependency measure
+	 */
+	public double getDependency(int i, int j) {
+		return dependency.get(i, j);
+	}
+
+
+	/**
+	 * This method returns the length one loop measure of an event
+	 *
+	 * @param i the event index
+	 * @return the length one loop measure
+	 */
+	public double getL1L(int i) {
+		return l1l[i];
+	}
+
+
+	/**
+	 * This method returns the length two loop measure between two events,
+	 * without considering the length one loops of the two events
+	 *
+	 * @param i the first event index
+	 * @param j the second event index
+	 * @return the length two loop measure
+	 */
+	public double getL2L(int i, int j) {
+		return l2l.get(i, j);
+	}
+
+
+	/**
+	 * This method returns the measure of the best input connection of each
+	 * event
+	 *
+	 * @return the best input measures (not a copy)
+	 */
+	public double[] getBestInputMeasures() {
+		return bestInputMeasure;
+	}
+
+
+	/**
+	 * This method returns the measure of the best output connection of each
+	 * event
+	 *
+	 * @return the best output measures (not a copy)
+	 */
+	public double[] getBestOutputMeasures() {
+		return bestOutputMeasure;
+	}
+
+
+	/**
+	 * This method returns the source of the best input connection of each
+	 * event
+	 *
+	 * @return the best input events, -1 if there is none (not a copy)
+	 */
+	public int[] getBestInputEvents() {
+		return bestInputEvent;
+	}
+
+
+	/**
+	 * This method returns the target of the best output connection of each
+	 * event
+	 *
+	 * @return the best output events, -1 if there is none (not a copy)
+	 */
+	public int[] getBestOutputEvents() {
+		return bestOutputEvent;
+	}
+
+
+	/**
+	 * This method calculates the dependency measure between two events
+	 */
+	private double dependencyMeasure(HMPPEventDictionary dictionary,
+			HMPPBasicRelations relations, int i, int j) {
+		boolean sameEvent = dictionary.sameActivity(i, j);
+		boolean isIStart = dictionary.isStart(i);
+		boolean isIFinish = dictionary.isComplete(i);
+		boolean isJStart = dictionary.isStart(j);
+		boolean isJFinish = dictionary.isComplete(j);
+		if (sameEvent && isIStart && isJFinish) {
+			return 1.0;
+		} else if ((!sameEvent) && isIFinish && isJStart) {
+			int transitionIndexI = dictionary.getActivity(i);
+			int transitionIndexJ = dictionary.getActivity(j);
+			double forward;
+			double backward;
+			if (causal(relations)) {
+				forward = relations.getCausalSuccession(i, j);
+				int completeJ = dictionary.getCompleteEvent(transitionIndexJ);
+				int startI = dictionary.getStartEvent(transitionIndexI);
+				backward = (completeJ < 0 || startI < 0) ? 0 :
+					relations.getCausalSuccession(completeJ, startI);
+			} else {
+				HMPPCountMatrix directSuccessionCount = relations.getDirectSuccessionCount();
+				forward = directSuccessionCount.get(i, j);
+				backward = directSuccessionCount.get(j, i);
+			}
+			return (forward - backward) /
+				   (forward + backward +
+					(relations.getParallelCount().get(transitionIndexI, transitionIndexJ) * intervalsOverlapMultiplier) +
+					dependencyDivisor);
+		} else {
+			return 0.0;
+		}
+	}
+
+
+	/**
+	 * This method collects the cells (i, j) such that (i, j) or (j, i) is not
+	 * 0 in the given matrix
+	 */
+	private static KeyList symmetricKeys(HMPPCountMatrix matrix) {
+		final KeyList toret = new KeyList();
+		matrix.forEachNonZero(new HMPPCountMatrix.EntryProcedure() {
+			public void apply(int row, int column, long value) {
+				toret.add(HMPPMeasureMatrix.key(row, column));
+				toret.add(HMPPMeasureMatrix.key(column, row));
+			}
+		});
+		return toret;
+	}
+
+
+	/**
+	 * This method tells if the dependency measures are based on the causal
+	 * successions (only if they have been counted)
+	 */
+	private boolean causal(HMPPBasicRelations relations) {
+		return useCausalSuccession && relations.getCausalityFall() > 0 &&
+				relations.hasLongRangeSuccessions();
+	}
+
+
+	/**
+	 * This method adds the couples of events whose dependency measure, based
+	 * on the causal successions, can be different from 0: for each causal
+	 * succession from the complete event of A to the start event of B, both
+	 * this couple and the one from the complete event of B to the start
+	 * event of A
+	 */
+	private static void addCausalKeys(final HMPPEventDictionary dictionary,
+			HMPPCountMatrix causalSuccession, final KeyList keys) {
+		causalSuccession.forEachNonZero(new HMPPCountMatrix.EntryProcedure() {
+			public void apply(int row, int column, long value) {
+				if (!dictionary.isComplete(row) || !dictionary.isStart(column)) {
+					return;
+				}
+				keys.add(HMPPMeasureMatrix.key(row, column));
+				int completeColumn = dictionary.getCompleteEvent(dictionary.getActivity(column));
+				int startRow = dictionary.getStartEvent(dictionary.getActivity(row));
+				if (completeColumn >= 0 && startRow >= 0) {
+					keys.add(HMPPMeasureMatrix.key(completeColumn, startRow));
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * This method collects all the cells of a square matrix
+	 */
+	private static KeyList allKeys(int size) {
+		KeyList toret = new KeyList();
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				toret.add(HMPPMeasureMatrix.key(i, j));
+			}
+		}
+		return toret;
+	}
+
+
+	/**
+	 * This class is a growable list of cell keys
+	 */
+	private static class KeyList {
+		private long[] keys = new long[16];
+		private int size = 0;
+
+		private void add(long key) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			keys[size++] = key;
+		}
+
+		/* Sorts the keys and removes the duplicates */
+		private void sort() {
+			Arrays.sort(keys, 0, size);
+			int distinct = 0;
+			for (int k = 0; k < size; k++) {
+				if (distinct == 0 || keys[k] != keys[distinct - 1]) {
+					keys[distinct++] = keys[k];
+				}
+			}
+			size = distinct;
+		}
+	}
+}
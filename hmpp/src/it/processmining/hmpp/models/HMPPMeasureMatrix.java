@@ -0,0 +1,112 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+
+/**
+ * This class is an immutable square matrix of measures, where all the
+ * missing values are 0. As for the {@link HMPPCountMatrix}, two storages are
+ * available: a dense one, with a flat primitive array and row-major
+ * indexing, and a sparse one, for the very large alphabets, with the non
+ * zero values of each row sorted by column (compressed rows).
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPMeasureMatrix {
+
+
+	private final int size;
+
+	/* Dense storage */
+	private final double[] dense;
+
+	/* Sparse storage */
+	private final int[] rowStart;
+	private final int[] columns;
+	private final double[] values;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param size the number of rows and columns
+	 * @param keys the cells with a value (see {@link #key(int, int)}), sorted
+	 * and without duplicates
+	 * @param cellValues the value of each cell
+	 * @param cells the number of cells
+	 */
+	public HMPPMeasureMatrix(int size, long[] keys, double[] cellValues,
+			int cells) {
+		this.size = size;
+		if ((long) size * size > HMPPCountMatrix.SPARSE_CELLS) {
+			dense = null;
+			rowStart = new int[size + 1];
+			columns = new int[cells];
+			values = Arrays.copyOf(cellValues, cells);
+			for (int k = 0; k < cells; k++) {
+				rowStart[row(keys[k]) + 1]++;
+				columns[k] = column(keys[k]);
+			}
+			for (int i = 0; i < size; i++) {
+				rowStart[i + 1] += rowStart[i];
+			}
+		} else {
+			dense = new double[size * size];
+			rowStart = null;
+			columns = null;
+			values = null;
+			for (int k = 0; k < cells; k++) {
+				dense[row(keys[k]) * size + column(keys[k])] = cellValues[k];
+			}
+		}
+	}
+
+
+	/**
+	 * This method returns a measure
+	 *
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the measure (0 if missing)
+	 */
+	public double get(int row, int column) {
+		if (dense != null) {
+			return dense[row * size + column];
+		}
+		int k = Arrays.binarySearch(columns, rowStart[row], rowStart[row + 1], column);
+		return (k < 0) ? 0.0 : values[k];
+	}
+
+
+	/**
+	 * This method returns the number of rows (and columns)
+	 *
+	 * @return the matrix size
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * This method packs the coordinates of a cell in a key, sorted as the
+	 * cells in row-major order
+	 *
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the cell key
+	 */
+	public static long key(int row, int column) {
+		return ((long) row << 32) | column;
+	}
+
+
+	private static int row(long key) {
+		return (int) (key >>> 32);
+	}
+
+
+	private static int column(long key) {
+		return (int) key;
+	}
+}
@@ -0,0 +1,242 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.processmining.framework.models.heuristics.HNSet;
+import org.processmining.framework.models.heuristics.HNSubSet;
+import org.processmining.framework.models.heuristics.HeuristicsNet;
+
+
+/**
+ * This class is the canonical form of the structure of a heuristics net:
+ * the input and output sets of each event, with the subsets and their
+ * elements sorted, packed in a primitive array, and the set of its edges
+ * (the couples connected by an output set). Two nets have the same
+ * structure if and only if they have the same number of events and the
+ * same input and output sets (as for {@link HeuristicsNet#equals(Object)}),
+ * regardless of the order the sets have been built in. A 128 bit hash of
+ * the structure is computed once, so two structures with different hashes
+ * are compared in constant time.
+ *
+ * The structure is a snapshot: it does not change if the net is modified.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPNetStructure {
+
+
+	/* Marker of a missing set */
+	private static final int NO_SET = -1;
+
+	/* The order of the subsets of a set: by size, then by elements */
+	private static final Comparator<int[]> SUBSETS_ORDER = new Comparator<int[]>() {
+		public int compare(int[] a, int[] b) {
+			if (a.length != b.length) {
+				return (a.length < b.length) ? -1 : 1;
+			}
+			for (int k = 0; k < a.length; k++) {
+				if (a[k] != b[k]) {
+					return (a[k] < b[k]) ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+	};
+
+	private final int size;
+	/* For each event, the input and the output set: the number of subsets
+	 * and, for each subset, its size and its elements */
+	private final int[] sets;
+	/* The edges, as (from << 32 | to), sorted */
+	private final long[] edges;
+	private final long hashHigh;
+	private final long hashLow;
+
+
+	/**
+	 * The class constructor, which builds the canonical form of a net
+	 *
+	 * @param net the heuristics net
+	 */
+	public HMPPNetStructure(HeuristicsNet net) {
+		size = net.size();
+		IntList encoding = new IntList();
+		LongList arcs = new LongList();
+		for (int i = 0; i < size; i++) {
+			encode(net.getInputSet(i), encoding);
+			HNSet output = net.getOutputSet(i);
+			encode(output, encoding);
+			if (output != null) {
+				for (int s = 0; s < output.size(); s++) {
+					HNSubSet subset = output.get(s);
+					for (int e = 0; e < subset.size(); e++) {
+						arcs.add(((long) i << 32) | subset.get(e));
+					}
+				}
+			}
+		}
+		sets = Arrays.copyOf(encoding.values, encoding.size);
+		Arrays.sort(arcs.values, 0, arcs.size);
+		int distinct = 0;
+		for (int k = 0; k < arcs.size; k++) {
+			if (distinct == 0 || arcs.values[k] != arcs.values[distinct - 1]) {
+				arcs.values[distinct++] = arcs.values[k];
+			}
+		}
+		edges = Arrays.copyOf(arcs.values, distinct);
+
+		/* Two independent 64 bit hashes of the whole form */
+		long high = 0x6a09e667f3bcc908L ^ size;
+		long low = 0xbb67ae8584caa73bL ^ size;
+		for (int k = 0; k < sets.length; k++) {
+			high = (high ^ sets[k]) * 0x9e3779b97f4a7c15L;
+			low = (low + sets[k]) * 0xc2b2ae3d27d4eb4fL;
+			low ^= low >>> 29;
+		}
+		for (int k = 0; k < edges.length; k++) {
+			high = (high ^ edges[k]) * 0x9e3779b97f4a7c15L;
+			low = (low + edges[k]) * 0xc2b2ae3d27d4eb4fL;
+			low ^= low >>> 29;
+		}
+		hashHigh = mix(high);
+		hashLow = mix(low ^ 0x3c6ef372fe94f82bL);
+	}
+
+
+	/**
+	 * This method returns the number of events of the net
+	 *
+	 * @return the number of events
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * This method returns the number of edges of the net
+	 *
+	 * @return the number of couples connected by an output set
+	 */
+	public int edgesSize() {
+		return edges.length;
+	}
+
+
+	/**
+	 * This method returns the most significant half of the structural hash
+	 *
+	 * @return the high 64 bits of the hash
+	 */
+	public long getHashHigh() {
+		return hashHigh;
+	}
+
+
+	/**
+	 * This method returns the least significant half of the structural hash
+	 *
+	 * @return the low 64 bits of the hash
+	 */
+	public long getHashLow() {
+		return hashLow;
+	}
+
+
+	@Override
+	public int hashCode() {
+		return (int) (hashLow ^ (hashLow >>> 32));
+	}
+
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof HMPPNetStructure)) {
+			return false;
+		}
+		HMPPNetStructure other = (HMPPNetStructure) o;
+		return hashHigh == other.hashHigh && hashLow == other.hashLow &&
+				size == other.size &&
+				Arrays.equals(edges, other.edges) &&
+				Arrays.equals(sets, other.sets);
+	}
+
+
+	/**
+	 * This method appends the canonical form of a set: the subsets are
+	 * sorted by size and then by elements
+	 */
+	private static void encode(HNSet set, IntList encoding) {
+		if (set == null) {
+			encoding.add(NO_SET);
+			return;
+		}
+		int[][] subsets = new int[set.size()][];
+		for (int s = 0; s < subsets.length; s++) {
+			HNSubSet subset = set.get(s);
+			subsets[s] = new int[subset.size()];
+			for (int e = 0; e < subsets[s].length; e++) {
+				subsets[s][e] = subset.get(e);
+			}
+			Arrays.sort(subsets[s]);
+		}
+		Arrays.sort(subsets, SUBSETS_ORDER);
+		encoding.add(subsets.length);
+		for (int s = 0; s < subsets.length; s++) {
+			encoding.add(subsets[s].length);
+			for (int e = 0; e < subsets[s].length; e++) {
+				encoding.add(subsets[s][e]);
+			}
+		}
+	}
+
+
+	/**
+	 * This method is the finalization step of the hashes, which spreads
+	 * each input bit over the whole value
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+
+	/**
+	 * This class is a growable list of integers
+	 */
+	private static class IntList {
+		private int[] values = new int[64];
+		private int size = 0;
+
+		private void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+
+
+	/**
+	 * This class is a growable list of longs
+	 */
+	private static class LongList {
+		private long[] values = new long[64];
+		private int size = 0;
+
+		private void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package it.processmining.hmpp.models;
 
+import java.util.Properties;
+
 
 /**
  * This class is the collector of the algorithm parameters (as in the Heuristics
@@ -32,6 +34,20 @@ public class HMPPParameters {
 	public static final String INTERVALS_OVERLAP_MULTIPLIER_L = "Intervals overlap multiplier ";
 
 
+	public static final String RELATIVE_TO_BEST_THRESHOLD_K = "relativeToBestThreshold";
+	public static final String POSITIVE_OBSERVATIONS_THRESHOLD_K = "positiveObservationsThreshold";
+	public static final String DEPENDENCY_THRESHOLD_K = "dependencyThreshold";
+	public static final String L1L_THRESHOLD_K = "l1lThreshold";
+	public static final String L2L_THRESHOLD_K = "l2lThreshold";
+	public static final String LONG_DISTANCE_THRESHOLD_K = "longDistanceThreshold";
+	public static final String DEPENDENCY_DIVISOR_K = "dependencyDivisor";
+	public static final String AND_THRESHOLD_K = "andThreshold";
+	public static final String INTERVALS_OVERLAP_MULTIPLIER_K = "intervalsOverlapMultiplier";
+	public static final String USE_ALL_CONNECTED_HEURISTICS_K = "useAllConnectedHeuristics";
+	public static final String USE_LONG_DISTANCE_DEPENDENCY_K = "useLongDistanceDependency";
+	public static final String USE_CAUSAL_SUCCESSION_K = "useCausalSuccession";
+
+
 	private double relativeToBestThreshold = RELATIVE_TO_BEST_THRESHOLD;
 	private int positiveObservationsThreshold = POSITIVE_OBSERVATIONS_THRESHOLD;
 	private double dependencyThreshold = DEPENDENCY_THRESHOLD;
@@ -42,6 +58,7 @@ public class HMPPParameters {
 	private double andThreshold = AND_THRESHOLD;
 	public boolean useAllConnectedHeuristics = true;
 	public boolean useLongDistanceDependency = false;
+	public boolean useCausalSuccession = false;
 	private double intervalsOverlapMultiplier = INTERVALS_OVERLAP_MULTIPLIER;
 	
 
@@ -236,6 +253,17 @@ public class HMPPParameters {
 	}
 
 	
+	/**
+	 * This methods sets the use of the decay weighted causal successions,
+	 * instead of the direct successions, in the dependency measures
+	 * 
+	 * @param x the use causal succession
+	 */
+	public void setUseCausalSuccession(boolean x) {
+		useCausalSuccession = x;
+	}
+
+	
 	/**
 	 * This methods sets the intervals overlap multiplier
 	 * 
@@ -246,6 +274,55 @@ public class HMPPParameters {
 	}
 
 
+	/**
+	 * This methods sets all the parameters present in a properties object
+	 * (the keys are the <tt>*_K</tt> constants), leaving the other ones
+	 * unchanged
+	 * 
+	 * @param properties the properties with the parameters
+	 * @throws NumberFormatException if a value is not a valid number
+	 */
+	public void setProperties(Properties properties) {
+		String value;
+		if ((value = properties.getProperty(RELATIVE_TO_BEST_THRESHOLD_K)) != null) {
+			setRelativeToBestThreshold(Double.parseDouble(value.trim()));
+		}
+		if ((value = properties.getProperty(POSITIVE_OBSERVATIONS_THRESHOLD_K)) != null) {
+			setPositiveObservationsThreshold(Integer.parseInt(value.trim()));
+		}
+		if ((value = properties.getProperty(DEPENDENCY_THRESHOLD_K)) != null) {
+			setDependencyThreshold(Double.parseDouble(value.trim()));
+		}
+		if ((value = properties.getProperty(L1L_THRESHOLD_K)) != null) {
+			setL1lThreshold(Double.parseDouble(value.trim()));
+		}
+		if ((value = properties.getProperty(L2L_THRESHOLD_K)) != null) {
+			setL2lThreshold(Double.parseDouble(value.trim()));
+		}
+		if ((value = properties.getProperty(LONG_DISTANCE_THRESHOLD_K)) != null) {
+			setLDThreshold(Double.parseDouble(value.trim()));
+		}
+		if ((value = properties.getProperty(DEPENDENCY_DIVISOR_K)) != null) {
+			setDependencyDivisor(Integer.parseInt(value.trim()));
+		}
+		if ((value = properties.getProperty(AND_THRESHOLD_K)) != null) {
+			setAndThreshold(Double.parseDouble(value.trim()));
+		}
+		if ((value = properties.getProperty(INTERVALS_OVERLAP_MULTIPLIER_K)) != null) {
+			setIntervalsOverlapMultiplier(Double.parseDouble(value.trim()));
+		}
+		if ((value = properties.getProperty(USE_ALL_CONNECTED_HEURISTICS_K)) != null) {
+			setUseAllConnectedHeuristics(Boolean.parseBoolean(value.trim()));
+		}
+		if ((value = properties.getProperty(USE_LONG_DISTANCE_DEPENDENCY_K)) != null) {
+			setUseLongDistanceDependency(Boolean.parseBoolean(value.trim()));
+		}
+		if ((value = properties.getProperty(USE_CAUSAL_SUCCESSION_K)) != null) {
+			setUseCausalSuccession(Boolean.parseBoolean(value.trim()));
+		}
+	}
+
+
 	@Override
 	public String toString() {
 		String output = "THRESHOLDS:\n" +
@@ -261,7 +338,9 @@ public class HMPPParameters {
 			"Use all-events-connected-heuristic " +
 			Boolean.toString(useAllConnectedHeuristics) + "\n" +
 			"Use long distance dependency heuristics " +
-			Boolean.toString(useLongDistanceDependency) + "\n";
+			Boolean.toString(useLongDistanceDependency) + "\n" +
+			"Use causal successions " +
+			Boolean.toString(useCausalSuccession) + "\n";
 		return output;
 	}
 }
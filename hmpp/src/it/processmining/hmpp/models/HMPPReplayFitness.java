@@ -0,0 +1,575 @@
+package it.processmining.hmpp.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.processmining.framework.models.heuristics.HNSet;
+import org.processmining.framework.models.heuristics.HNSubSet;
+import org.processmining.framework.models.heuristics.HeuristicsNet;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+
+/**
+ * This class calculates the continuous semantics fitness of a heuristics
+ * net (the one of the ProM <tt>DTContinuousSemanticsFitness</tt>), replaying
+ * the process instances of a trace store on the net.
+ *
+ * The token game is the one of the ProM <tt>MarkingHeuristicsNet</tt>: there
+ * is a place for each output subset of each task, plus the start and the end
+ * places; a task consumes the tokens of the combination of input tasks which
+ * leaves the fewest input subsets without a token (the missing tokens) and
+ * produces a token in each of its output places. A task fired with missing
+ * tokens is not parsed; a process instance is properly completed if all its
+ * tasks are parsed and, at the end, the only token left is in the end place.
+ * The fitness is:
+ * <pre>
+ * 0.4 * parsed tasks / tasks + 0.6 * properly completed instances / instances
+ * </pre>
+ *
+ * The marking is kept in a primitive array and each control-flow variant is
+ * replayed just once, weighted by its multiplicity, so the result does not
+ * depend on the number of threads the variants are split among. When more
+ * than one combination of input tasks misses the same number of tokens, ProM
+ * explores them in random order and keeps the first one found; here they are
+ * explored in increasing order of the task indexes. So, on the nets with
+ * such ties, the fitness can be slightly different from the ProM one (and
+ * from the ProM result with any other random order), while the firings of
+ * the tasks are always the same. The nets of the HeuristicsMiner++ have no
+ * duplicate tasks.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPReplayFitness {
+
+
+	/* The weights of the two components of the fitness */
+	public static final double PARSED_WEIGHT = 0.4;
+	public static final double PROPERLY_COMPLETED_WEIGHT = 0.6;
+	/* Minimum number of variants replayed by each thread */
+	private static final int MIN_VARIANTS_PER_THREAD = 64;
+
+	private static final int[] EMPTY = new int[0];
+
+	private final HeuristicsNet net;
+	private final int size;
+	/* The input subsets of each task, with their elements sorted */
+	private final int[][][] inputSubsets;
+	/* All the input tasks of each task, sorted */
+	private final int[][] inputTasks;
+	/* For each task and each of its input tasks (in the order of inputTasks),
+	 * the output places of the input task containing the task (null if
+	 * there is none) */
+	private final int[][][] relatedPlaces;
+	/* The output places of task t are from placeStart[t] to
+	 * placeStart[t + 1] */
+	private final int[] placeStart;
+	/* The arcs entering task t are from arcStart[t] (in the order of
+	 * inputTasks) */
+	private final int[] arcStart;
+
+
+	/**
+	 * The class constructor, which copies the sets of the net in primitive
+	 * arrays. The sets of the net must not be modified while the fitness is
+	 * calculated.
+	 *
+	 * @param net the heuristics net to replay
+	 */
+	public HMPPReplayFitness(HeuristicsNet net) {
+		this.net = net;
+		this.size = net.size();
+		inputSubsets = new int[size][][];
+		inputTasks = new int[size][];
+		relatedPlaces = new int[size][][];
+		placeStart = new int[size + 1];
+		arcStart = new int[size + 1];
+
+		for (int t = 0; t < size; t++) {
+			HNSet set = net.getInputSet(t);
+			int subsets = (set == null) ? 0 : set.size();
+			inputSubsets[t] = new int[subsets][];
+			HMPPBitSubSet all = new HMPPBitSubSet();
+			for (int s = 0; s < subsets; s++) {
+				inputSubsets[t][s] = toArray(set.get(s));
+				for (int e : inputSubsets[t][s]) {
+					all.add(e);
+				}
+			}
+			inputTasks[t] = new int[all.size()];
+			int k = 0;
+			for (int e = all.next(0); e >= 0; e = all.next(e + 1)) {
+				inputTasks[t][k++] = e;
+			}
+			relatedPlaces[t] = new int[inputTasks[t].length][];
+			arcStart[t + 1] = arcStart[t] + inputTasks[t].length;
+			set = net.getOutputSet(t);
+			placeStart[t + 1] = placeStart[t] + ((set == null) ? 0 : set.size());
+		}
+
+		/* The places of each input task containing a task */
+		for (int i = 0; i < size; i++) {
+			HNSet set = net.getOutputSet(i);
+			for (int s = 0; set != null && s < set.size(); s++) {
+				int place = placeStart[i] + s;
+				HNSubSet subset = set.get(s);
+				for (int k = 0; k < subset.size(); k++) {
+					int t = subset.get(k);
+					int pos = Arrays.binarySearch(inputTasks[t], i);
+					if (pos >= 0) {
+						int[] places = relatedPlaces[t][pos];
+						places = (places == null) ? new int[1] : Arrays.copyOf(places, places.length + 1);
+						places[places.length - 1] = place;
+						relatedPlaces[t][pos] = places;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * This method replays all the process instances of a trace store on the
+	 * net and sets the fitness of the net, the number of firings of each task
+	 * and the usage of each arc
+	 *
+	 * @param store the process instances to replay
+	 * @param variants the control-flow variants of the store
+	 * @param threads the number of threads to use
+	 * @return the fitness of the net
+	 */
+	public double calculate(final HMPPTraceStore store,
+			final HMPPVariantIndex variants, int threads) {
+		threads = Math.min(threads, variants.variants() / MIN_VARIANTS_PER_THREAD);
+		Counters counters;
+		if (threads > 1) {
+			counters = new Counters();
+			final AtomicInteger nextVariant = new AtomicInteger();
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				ArrayList<Future<Counters>> partials = new ArrayList<Future<Counters>>();
+				for (int t = 0; t < threads; t++) {
+					partials.add(pool.submit(new Callable<Counters>() {
+						public Counters call() {
+							Replayer replayer = new Replayer();
+							for (int v = nextVariant.getAndIncrement(); v < variants.variants();
+									v = nextVariant.getAndIncrement()) {
+								replayer.replay(store, variants, v);
+							}
+							return replayer.counters;
+						}
+					}));
+				}
+				for (Future<Counters> partial : partials) {
+					counters.merge(partial.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			Replayer replayer = new Replayer();
+			for (int v = 0; v < variants.variants(); v++) {
+				replayer.replay(store, variants, v);
+			}
+			counters = replayer.counters;
+		}
+
+		double fitness = fitness(counters.parsed, counters.properlyCompleted, store);
+		net.setFitness(fitness);
+		net.resetDuplicatesActualFiring();
+		net.resetArcUsage();
+		DoubleMatrix2D arcUsage = net.getArcUsage();
+		for (int t = 0; t < size; t++) {
+			net.increaseElementActualFiring(t, counters.firings[t]);
+			for (int k = 0; k < inputTasks[t].length; k++) {
+				arcUsage.setQuick(inputTasks[t][k], t, counters.arcUsage[arcStart[t] + k]);
+			}
+		}
+		return fitness;
+	}
+
+
+	/**
+	 * This method combines the replay counters in the fitness
+	 *
+	 * @param parsed the number of parsed tasks
+	 * @param properlyCompleted the number of properly completed instances
+	 * @param store the replayed process instances
+	 * @return the fitness
+	 */
+	static double fitness(long parsed, long properlyCompleted,
+			HMPPTraceStore store) {
+		return PARSED_WEIGHT * (parsed / (double) store.size()) +
+				PROPERLY_COMPLETED_WEIGHT * (properlyCompleted / (double) store.cases());
+	}
+
+
+	/**
+	 * This method copies the elements of a subset, sorted
+	 */
+	private static int[] toArray(HNSubSet subset) {
+		int[] toret = new int[subset.size()];
+		for (int k = 0; k < toret.length; k++) {
+			toret[k] = subset.get(k);
+		}
+		Arrays.sort(toret);
+		return toret;
+	}
+
+
+	/**
+	 * This method returns a sorted array without the elements of another one
+	 */
+	private static int[] minus(int[] a, int[] removed) {
+		int[] toret = new int[a.length];
+		int size = 0;
+		for (int e : a) {
+			if (Arrays.binarySearch(removed, e) < 0) {
+				toret[size++] = e;
+			}
+		}
+		return (size == a.length) ? a : Arrays.copyOf(toret, size);
+	}
+
+
+	/**
+	 * This method returns a sorted array with one more element
+	 */
+	private static int[] with(int[] a, int e) {
+		int pos = Arrays.binarySearch(a, e);
+		if (pos >= 0) {
+			return a;
+		}
+		pos = -pos - 1;
+		int[] toret = new int[a.length + 1];
+		System.arraycopy(a, 0, toret, 0, pos);
+		toret[pos] = e;
+		System.arraycopy(a, pos, toret, pos + 1, a.length - pos);
+		return toret;
+	}
+
+
+	/**
+	 * This method returns a sorted array without one element
+	 */
+	private static int[] without(int[] a, int e) {
+		int pos = Arrays.binarySearch(a, e);
+		if (pos < 0) {
+			return a;
+		}
+		int[] toret = new int[a.length - 1];
+		System.arraycopy(a, 0, toret, 0, pos);
+		System.arraycopy(a, pos + 1, toret, pos, a.length - pos - 1);
+		return toret;
+	}
+
+
+	/**
+	 * This class holds the counters of a replay
+	 */
+	private class Counters {
+		private long parsed = 0;
+		private long properlyCompleted = 0;
+		private int[] firings = new int[size];
+		private int[] arcUsage = new int[arcStart[size]];
+
+		private void merge(Counters other) {
+			parsed += other.parsed;
+			properlyCompleted += other.properlyCompleted;
+			for (int t = 0; t < firings.length; t++) {
+				firings[t] += other.firings[t];
+			}
+			for (int a = 0; a < arcUsage.length; a++) {
+				arcUsage[a] += other.arcUsage[a];
+			}
+		}
+	}
+
+
+	/**
+	 * This method builds a replayer, with its own marking and counters, for
+	 * the replay of single variants
+	 *
+	 * @return a new replayer
+	 */
+	Replayer newReplayer() {
+		return new Replayer();
+	}
+
+
+	/**
+	 * This class replays the process instances, one at a time, on its own
+	 * marking. Each thread has its own replayer.
+	 */
+	class Replayer {
+
+		private final Counters counters = new Counters();
+		private final int[] tokens = new int[placeStart[size]];
+		private int startPlace;
+		private int endPlace;
+		private int numberTokens;
+		/* The best combination of input tasks found (null if none) */
+		private int[] bestTasks;
+		private int bestMissing;
+		/* The outcome of the last replayed variant */
+		int lastParsed;
+		boolean lastProperlyCompleted;
+
+
+		/**
+		 * This method replays a variant, weighted by its multiplicity
+		 */
+		void replay(HMPPTraceStore store, HMPPVariantIndex variants, int v) {
+			int weight = variants.getMultiplicity(v);
+			int c = variants.getRepresentative(v);
+			Arrays.fill(tokens, 0);
+			startPlace = 1;
+			endPlace = 0;
+			numberTokens = 1;
+			boolean disabled = false;
+			int parsed = 0;
+			for (int pos = store.caseStart(c); pos < store.caseEnd(c); pos++) {
+				if (fire(store.getEvent(pos), weight) > 0) {
+					disabled = true;
+				} else {
+					parsed++;
+				}
+			}
+			lastParsed = parsed;
+			lastProperlyCompleted = !disabled && endPlace == 1 && numberTokens == 1;
+			counters.parsed += (long) parsed * weight;
+			if (lastProperlyCompleted) {
+				counters.properlyCompleted += weight;
+			}
+		}
+
+
+		/**
+		 * This method fires a task and returns the number of missing tokens
+		 */
+		private int fire(int task, int weight) {
+			int missing = 0;
+			int[] tasks = EMPTY;
+
+			/* The input tasks to consume the tokens from */
+			if (inputSubsets[task].length == 0) {
+				if (startPlace <= 0) {
+					missing++;
+				}
+			} else {
+				int[] emptyTasks = tasksWithEmptyOutputPlaces(task);
+				SubsetList remaining = new SubsetList();
+				for (int[] subset : inputSubsets[task]) {
+					int[] marked = minus(subset, emptyTasks);
+					if (marked.length == 0) {
+						missing++;
+					} else {
+						remaining.add(marked);
+					}
+				}
+				if (remaining.size > 0) {
+					bestTasks = null;
+					bestMissing = 0;
+					findBestCombination(remaining, -1, EMPTY, 0, EMPTY);
+					if (bestTasks != null) {
+						tasks = bestTasks;
+						missing += bestMissing;
+					}
+				}
+			}
+
+			/* Consume the tokens */
+			if (inputSubsets[task].length == 0) {
+				if (startPlace > 0) {
+					startPlace--;
+					numberTokens--;
+				}
+			} else {
+				for (int input : tasks) {
+					int pos = Arrays.binarySearch(inputTasks[task], input);
+					int[] places = relatedPlaces[task][pos];
+					for (int k = 0; places != null && k < places.length; k++) {
+						if (tokens[places[k]] > 0) {
+							tokens[places[k]]--;
+							numberTokens--;
+						}
+					}
+					counters.arcUsage[arcStart[task] + pos] += weight;
+				}
+			}
+
+			/* Produce the tokens */
+			if (placeStart[task] == placeStart[task + 1]) {
+				numberTokens++;
+				endPlace++;
+			} else {
+				numberTokens += placeStart[task + 1] - placeStart[task];
+				for (int p = placeStart[task]; p < placeStart[task + 1]; p++) {
+					tokens[p]++;
+				}
+			}
+			counters.firings[task] += weight;
+			return missing;
+		}
+
+
+		/**
+		 * This method returns the input tasks of a task with at least one
+		 * output place, related to the task, without tokens
+		 */
+		private int[] tasksWithEmptyOutputPlaces(int task) {
+			int[] toret = new int[inputTasks[task].length];
+			int size = 0;
+			for (int k = 0; k < inputTasks[task].length; k++) {
+				int[] places = relatedPlaces[task][k];
+				boolean empty = (places == null);
+				for (int i = 0; !empty && i < places.length; i++) {
+					empty = (tokens[places[i]] <= 0);
+				}
+				if (empty) {
+					toret[size++] = inputTasks[task][k];
+				}
+			}
+			return Arrays.copyOf(toret, size);
+		}
+
+
+		/**
+		 * This method searches, with a branch and bound, the combination of
+		 * tasks with the fewest missing tokens: choosing a task marks all the
+		 * subsets containing it and excludes the other tasks of those
+		 * subsets, a subset with all its tasks excluded misses a token. The
+		 * search is the one of the ProM <tt>MarkingHeuristicsNet</tt>
+		 * (including the way the subsets are removed from the sorted set).
+		 */
+		private void findBestCombination(SubsetList set, int task, int[] tasks,
+				int missing, int[] excluded) {
+			if (bestTasks != null && bestMissing <= missing) {
+				return;
+			}
+			int[] union = EMPTY;
+			if (task != -1) {
+				SubsetList marked = new SubsetList();
+				for (int k = 0; k < set.size; k++) {
+					if (Arrays.binarySearch(set.items[k], task) >= 0) {
+						marked.add(set.items[k]);
+					}
+				}
+				for (int k = 0; k < marked.size; k++) {
+					for (int e : marked.items[k]) {
+						union = with(union, e);
+					}
+				}
+				for (int k = 0; k < marked.size; k++) {
+					set.remove(marked.items[k]);
+				}
+				tasks = with(tasks, task);
+			}
+			if (set.size == 0) {
+				bestTasks = tasks;
+				bestMissing = missing;
+				return;
+			}
+			if (task != -1) {
+				SubsetList filtered = new SubsetList();
+				for (int k = 0; k < set.size; k++) {
+					int[] subset = minus(minus(set.items[k], union), excluded);
+					if (subset.length == 0) {
+						missing++;
+					} else {
+						filtered.add(subset);
+					}
+				}
+				set = filtered;
+			}
+			for (int k = 0; k < set.size; k++) {
+				while (set.items[k].length > 0) {
+					int e = set.items[k][0];
+					findBestCombination(set.copy(), e, tasks, missing, excluded);
+					excluded = with(excluded, e);
+					set.items[k] = without(set.items[k], e);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * This class is a set of subsets, sorted by size and then by elements and
+	 * searched with a binary search, as the ProM {@link HNSet}. The subsets
+	 * are never modified: they are replaced.
+	 */
+	private static class SubsetList {
+		private int[][] items = new int[4][];
+		private int size = 0;
+
+		private void add(int[] subset) {
+			int pos = search(subset);
+			if (pos >= 0) {
+				return;
+			}
+			pos = -pos - 1;
+			if (size == items.length) {
+				items = Arrays.copyOf(items, size * 2);
+			}
+			System.arraycopy(items, pos, items, pos + 1, size - pos);
+			items[pos] = subset;
+			size++;
+		}
+
+		private void remove(int[] subset) {
+			int pos = search(subset);
+			if (pos >= 0) {
+				System.arraycopy(items, pos + 1, items, pos, size - pos - 1);
+				size--;
+			}
+		}
+
+		private SubsetList copy() {
+			SubsetList toret = new SubsetList();
+			toret.items = Arrays.copyOf(items, Math.max(4, size));
+			toret.size = size;
+			return toret;
+		}
+
+		private int search(int[] subset) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(items[mid], subset);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+
+		private static int compare(int[] a, int[] b) {
+			if (a.length != b.length) {
+				return (a.length < b.length) ? -1 : 1;
+			}
+			for (int k = 0; k < a.length; k++) {
+				if (a[k] != b[k]) {
+					return (a[k] < b[k]) ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package it.processmining.hmpp.models;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.processmining.framework.log.LogEvent;
+import org.processmining.framework.log.LogEvents;
+import org.processmining.framework.log.LogReader;
+import org.processmining.framework.log.LogSummary;
+
+
+/**
+ * This class saves and loads the complete state of the basic relations (the
+ * event dictionary, with the occurrences of each event, and all the
+ * counters) as a binary file, so that the analysis of a log can be reopened
+ * without counting it again.
+ *
+ * Each file starts with a magic number, a format version and the
+ * fingerprint of the log it was built from: a file is loaded only if all of
+ * them match. The file is read through a memory mapped buffer. The matrices
+ * are written as lists of non zero entries, so the file size does not
+ * depend on the square of the alphabet size. All the sizes and the indexes
+ * read are checked against the file size and the dictionary, so a corrupt
+ * file is just discarded.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPSnapshot {
+
+
+	/* "HMPP" in ASCII */
+	private static final int MAGIC = 0x484D5050;
+	public static final int VERSION = 4;
+
+	private HMPPEventDictionary dictionary;
+	private HMPPBasicRelations relations;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param dictionary the event dictionary
+	 * @param relations the basic relations counters
+	 */
+	public HMPPSnapshot(HMPPEventDictionary dictionary,
+			HMPPBasicRelations relations) {
+		this.dictionary = dictionary;
+		this.relations = relations;
+	}
+
+
+	/**
+	 * This method calculates the fingerprint of a log, from its file (name,
+	 * size and last modification time, if it is a local file) and from its
+	 * summary (number of process instances and audit trail entries, and all
+	 * the log events with their occurrences)
+	 *
+	 * @param log the log
+	 * @return the log fingerprint
+	 */
+	public static long fingerprint(LogReader log) {
+		LogSummary summary = log.getLogSummary();
+		long hash = 0xcbf29ce484222325L;
+		String name = log.getFile().toString();
+		hash = hash(hash, name);
+		File file = new File(name);
+		if (file.isFile()) {
+			hash = hash(hash, file.length());
+			hash = hash(hash, file.lastModified());
+		}
+		hash = hash(hash, summary.getNumberOfProcessInstances());
+		hash = hash(hash, summary.getNumberOfAuditTrailEntries());
+		LogEvents events = summary.getLogEvents();
+		for (int i = 0; i < events.size(); i++) {
+			LogEvent le = events.getEvent(i);
+			hash = hash(hash, le.getModelElementName());
+			hash = hash(hash, le.getEventType());
+			hash = hash(hash, le.getOccurrenceCount());
+		}
+		return hash;
+	}
+
+
+	/**
+	 * This method writes the snapshot to a file
+	 *
+	 * @param file the destination file
+	 * @param fingerprint the fingerprint of the log
+	 * @throws IOException
+	 */
+	public void save(File file, long fingerprint) throws IOException {
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(relations.getNumberOfProcessInstances());
+
+			/* Dictionary */
+			int activitiesSize = dictionary.activitiesSize();
+			int eventsSize = dictionary.eventsSize();
+			out.writeInt(activitiesSize);
+			for (String activity : dictionary.getActivities()) {
+				writeString(out, activity);
+			}
+			out.writeInt(eventsSize);
+			LogEvents events = dictionary.getEvents();
+			for (int i = 0; i < eventsSize; i++) {
+				LogEvent le = events.getEvent(i);
+				writeString(out, le.getModelElementName());
+				writeString(out, le.getEventType());
+				out.writeInt(le.getOccurrenceCount());
+			}
+
+			/* Counters */
+			for (int i = 0; i < eventsSize; i++) {
+				out.writeInt(relations.getStartCount().get(i));
+				out.writeInt(relations.getEndCount().get(i));
+			}
+			long[] activityTime = relations.getTotalActivityTimeSeconds();
+			for (int i = 0; i < activitiesSize; i++) {
+				out.writeInt(relations.getTotalActivityCounter().get(i));
+				out.writeLong(activityTime[i]);
+			}
+			writeMatrix(out, relations.getDirectSuccessionCount());
+			writeMatrix(out, relations.getSuccession2Count());
+			out.writeDouble(relations.getCausalityFall());
+			out.writeBoolean(relations.hasLongRangeSuccessions());
+			if (relations.hasLongRangeSuccessions()) {
+				writeMatrix(out, relations.getLongRangeSuccessionCount());
+				writeMatrix(out, relations.getCausalSuccessionUnits());
+			}
+			writeMatrix(out, relations.getParallelCount());
+			writeMatrix(out, relations.getTotalOverlappingTimeMillis());
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * This method reads a snapshot from a file
+	 *
+	 * @param file the source file
+	 * @param fingerprint the fingerprint of the log
+	 * @return the snapshot, or null if the file does not exist, it refers
+	 * to another log (or to another format version) or it is corrupt
+	 * @throws IOException
+	 */
+	public static HMPPSnapshot load(File file, long fingerprint)
+			throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() < 20) {
+				return null;
+			}
+			/* The header is checked before mapping the file: a mapping stays
+			 * open until it is garbage collected and, on some platforms, it
+			 * would prevent replacing a stale snapshot */
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION ||
+					raf.readLong() != fingerprint) {
+				return null;
+			}
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 16,
+					channel.size() - 16);
+			int processInstances = in.getInt();
+			check(processInstances >= 0);
+
+			/* Dictionary (each activity takes at least 4 bytes, each event at
+			 * least 12) */
+			int activitiesSize = in.getInt();
+			check(activitiesSize >= 0 && activitiesSize <= in.remaining() / 4);
+			String[] activities = new String[activitiesSize];
+			for (int i = 0; i < activities.length; i++) {
+				activities[i] = readString(in);
+			}
+			int eventsSize = in.getInt();
+			check(eventsSize >= 0 && eventsSize <= in.remaining() / 12);
+			LogEvents events = new LogEvents();
+			for (int i = 0; i < eventsSize; i++) {
+				String element = readString(in);
+				String type = readString(in);
+				events.add(new LogEvent(element, type, in.getInt()));
+			}
+			HMPPEventDictionary dictionary = new HMPPEventDictionary(events,
+					activities);
+			check(dictionary.activitiesSize() == activitiesSize &&
+					dictionary.eventsSize() == eventsSize);
+
+			/* Counters */
+			HMPPBasicRelations relations = new HMPPBasicRelations(eventsSize,
+					activities.length);
+			relations.addProcessInstances(processInstances);
+			for (int i = 0; i < eventsSize; i++) {
+				relations.getStartCount().increment(i, in.getInt());
+				relations.getEndCount().increment(i, in.getInt());
+			}
+			for (int i = 0; i < activities.length; i++) {
+				relations.getTotalActivityCounter().increment(i, in.getInt());
+				relations.addActivityTime(i, in.getLong());
+			}
+			readMatrix(in, relations.getDirectSuccessionCount());
+			readMatrix(in, relations.getSuccession2Count());
+			relations.setCausalityFall(in.getDouble());
+			if (in.get() != 0) {
+				relations.allocateLongRangeSuccessions();
+				readMatrix(in, relations.getLongRangeSuccessionCount());
+				readMatrix(in, relations.getCausalSuccessionUnits());
+			}
+			readMatrix(in, relations.getParallelCount());
+			readMatrix(in, relations.getTotalOverlappingTimeMillis());
+
+			return new HMPPSnapshot(dictionary, relations);
+		} catch (BufferUnderflowException e) {
+			/* Truncated file */
+			return null;
+		} catch (RuntimeException e) {
+			/* Corrupt file (wrong sizes, indexes or names) */
+			return null;
+		} finally {
+			raf.close();
+		}
+	}
+
+
+	public HMPPEventDictionary getDictionary() {
+		return dictionary;
+	}
+
+
+	public HMPPBasicRelations getRelations() {
+		return relations;
+	}
+
+
+	/**
+	 * This method writes the non zero entries of a matrix, followed by a -1
+	 * row marker
+	 */
+	private static void writeMatrix(final DataOutputStream out,
+			HMPPCountMatrix matrix) throws IOException {
+		final IOException[] error = new IOException[1];
+		matrix.forEachNonZero(new HMPPCountMatrix.EntryProcedure() {
+			public void apply(int row, int column, long value) {
+				if (error[0] != null) {
+					return;
+				}
+				try {
+					out.writeInt(row);
+					out.writeInt(column);
+					out.writeLong(value);
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			}
+		});
+		if (error[0] != null) {
+			throw error[0];
+		}
+		out.writeInt(-1);
+	}
+
+
+	/**
+	 * This method reads the entries written by
+	 * {@link #writeMatrix(DataOutputStream, HMPPCountMatrix)}
+	 */
+	private static void readMatrix(MappedByteBuffer in, HMPPCountMatrix matrix) {
+		for (int row = in.getInt(); row != -1; row = in.getInt()) {
+			int column = in.getInt();
+			long value = in.getLong();
+			check(row >= 0 && row < matrix.rows() &&
+					column >= 0 && column < matrix.columns() && value >= 0);
+			matrix.increment(row, column, value);
+		}
+	}
+
+
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		out.writeInt(s.length());
+		out.writeChars(s);
+	}
+
+
+	private static String readString(MappedByteBuffer in) {
+		int length = in.getInt();
+		check(length >= 0 && length <= in.remaining() / 2);
+		char[] chars = new char[length];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = in.getChar();
+		}
+		return new String(chars);
+	}
+
+
+	/**
+	 * This method rejects a corrupt file
+	 *
+	 * @param valid the result of a consistency check on the data read
+	 * @throws IllegalStateException if the check failed
+	 */
+	private static void check(boolean valid) {
+		if (!valid) {
+			throw new IllegalStateException("Corrupt snapshot");
+		}
+	}
+
+
+	/**
+	 * FNV-1a hash of a string
+	 */
+	private static long hash(long hash, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		return hash(hash, s.length());
+	}
+
+
+	/**
+	 * FNV-1a hash of a number
+	 */
+	private static long hash(long hash, long value) {
+		for (int i = 0; i < 8; i++) {
+			hash = (hash ^ (value & 0xff)) * 0x100000001b3L;
+			value >>>= 8;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,146 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+
+/**
+ * This class is the sparse storage of a {@link HMPPCountMatrix}: only the
+ * non zero counters are kept, in an open addressing hash table (with linear
+ * probing) from the cell coordinates (packed in a long) to the counter
+ * value. The memory
+ * required is proportional to the number of observed couples, not to the
+ * square of the alphabet size.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPSparseCountMatrix extends HMPPCountMatrix {
+
+
+	private static final long EMPTY = -1L;
+
+	private long[] keys;
+	private long[] values;
+	private int size = 0;
+
+
+	/**
+	 * The class constructor, with all the counters set to 0
+	 *
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 */
+	public HMPPSparseCountMatrix(int rows, int columns) {
+		super(rows, columns);
+		keys = new long[64];
+		values = new long[64];
+		Arrays.fill(keys, EMPTY);
+	}
+
+
+	@Override
+	public long get(int row, int column) {
+		long key = key(row, column);
+		int mask = keys.length - 1;
+		for (int slot = mix(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+		}
+		return 0L;
+	}
+
+
+	@Override
+	public void increment(int row, int column, long delta) {
+		long key = key(row, column);
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				values[slot] += delta;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = delta;
+		size++;
+		if (2 * size > keys.length) {
+			rehash(keys.length * 2);
+		}
+	}
+
+
+	@Override
+	public boolean isSparse() {
+		return true;
+	}
+
+
+	@Override
+	protected boolean isWide() {
+		return true;
+	}
+
+
+	@Override
+	protected boolean hasRoom(int rows, int columns) {
+		return true;
+	}
+
+
+	@Override
+	public void forEachNonZero(EntryProcedure procedure) {
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != EMPTY && values[slot] != 0) {
+				procedure.apply((int) (keys[slot] >>> 32), (int) keys[slot],
+						values[slot]);
+			}
+		}
+	}
+
+
+	/**
+	 * This method moves all the entries into a new table
+	 *
+	 * @param capacity the new table capacity (a power of 2)
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new long[capacity];
+		values = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = mix(oldKeys[i]) & mask;
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+
+	/**
+	 * This method packs the coordinates of a cell in a key (which does not
+	 * depend on the matrix size, so the matrix can be enlarged in place)
+	 */
+	private static long key(int row, int column) {
+		return ((long) row << 32) | (column & 0xffffffffL);
+	}
+
+
+	/**
+	 * This method spreads the bits of a key, for the open addressing table
+	 */
+	private static int mix(long key) {
+		key ^= (key >>> 33);
+		key *= 0xff51afd7ed558ccdL;
+		key ^= (key >>> 33);
+		return (int) key;
+	}
+}
@@ -0,0 +1,131 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+
+/**
+ * This class is the histogram of the possible values of a threshold: the
+ * distinct values of the connections, sorted in increasing order, each one
+ * with the number of connections with a value not lower than it (so, the
+ * connections which fulfill the threshold set to that value). The values
+ * and the counts are kept in primitive arrays, built once from the measures
+ * (or the counters) and then just read by the user interface and the
+ * parameter sweep.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPThresholdHistogram {
+
+
+	private final double[] values;
+	private final int[] counts;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param samples the value of each connection (the array is sorted)
+	 * @param size the number of connections
+	 */
+	public HMPPThresholdHistogram(double[] samples, int size) {
+		Arrays.sort(samples, 0, size);
+		double[] distinct = new double[size];
+		int[] occurrences = new int[size];
+		int n = 0;
+		for (int k = 0; k < size; k++) {
+			if (n == 0 || samples[k] != distinct[n - 1]) {
+				distinct[n++] = samples[k];
+			}
+			occurrences[n - 1]++;
+		}
+		/* Sums all the bigger values */
+		for (int k = n - 2; k >= 0; k--) {
+			occurrences[k] += occurrences[k + 1];
+		}
+		values = Arrays.copyOf(distinct, n);
+		counts = Arrays.copyOf(occurrences, n);
+	}
+
+
+	/**
+	 * This method returns the number of distinct values
+	 *
+	 * @return the number of values
+	 */
+	public int size() {
+		return values.length;
+	}
+
+
+	/**
+	 * This method returns a value of the threshold
+	 *
+	 * @param k the value index
+	 * @return the k-th smallest value
+	 */
+	public double getValue(int k) {
+		return values[k];
+	}
+
+
+	/**
+	 * This method returns the number of connections with a value not lower
+	 * than the given one
+	 *
+	 * @param k the value index
+	 * @return the number of connections
+	 */
+	public int getCount(int k) {
+		return counts[k];
+	}
+
+
+	/**
+	 * This method returns all the distinct values, sorted
+	 *
+	 * @return the values (not a copy)
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+
+	/**
+	 * This method returns the number of connections of all the values
+	 *
+	 * @return the counts (not a copy)
+	 */
+	public int[] getCounts() {
+		return counts;
+	}
+
+
+	/**
+	 * This class collects the values of the connections of a histogram
+	 */
+	public static class Builder {
+		private double[] samples = new double[16];
+		private int size = 0;
+
+		/**
+		 * This method adds the value of a connection
+		 *
+		 * @param value the value
+		 */
+		public void add(double value) {
+			if (size == samples.length) {
+				samples = Arrays.copyOf(samples, size * 2);
+			}
+			samples[size++] = value;
+		}
+
+		/**
+		 * This method builds the histogram of the values added so far
+		 *
+		 * @return the new histogram
+		 */
+		public HMPPThresholdHistogram build() {
+			return new HMPPThresholdHistogram(samples, size);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.processmining.framework.log.AuditTrailEntry;
+import org.processmining.framework.log.LogReader;
+import org.processmining.framework.log.ProcessInstance;
+
+
+/**
+ * This class is an immutable, columnar encoding of a log. All the audit trail
+ * entries are stored, case after case, as event indexes (referred to an
+ * {@link HMPPEventDictionary}) and timestamps, so that the counting, replay
+ * and export stages can scan plain arrays instead of walking the log objects
+ * again.
+ *
+ * The entries of case <tt>c</tt> are the positions from
+ * <tt>caseStart(c)</tt> (included) to <tt>caseEnd(c)</tt> (excluded).
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPTraceStore {
+
+
+	private final int[] events;
+	private final long[] timestamps;
+	private final int[] caseOffsets;
+	private final int cases;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param events the event index of each entry
+	 * @param timestamps the timestamp of each entry
+	 * @param caseOffsets the offsets of the cases (one more than the number
+	 * of cases, the last one is the number of entries)
+	 * @param cases the number of cases
+	 */
+	private HMPPTraceStore(int[] events, long[] timestamps, int[] caseOffsets,
+			int cases) {
+		this.events = events;
+		this.timestamps = timestamps;
+		this.caseOffsets = caseOffsets;
+		this.cases = cases;
+	}
+
+
+	/**
+	 * This method builds the store, with just one pass over the log. Entries
+	 * not known by the dictionary are skipped, entries without a timestamp
+	 * get a 0 timestamp.
+	 *
+	 * @param log the log to encode
+	 * @param dictionary the dictionary of the log events
+	 * @return the trace store
+	 */
+	@SuppressWarnings("unchecked")
+	public static HMPPTraceStore build(LogReader log,
+			HMPPEventDictionary dictionary) {
+		int capacity = Math.max(16, log.getLogSummary().getNumberOfAuditTrailEntries());
+		int casesCapacity = Math.max(16, log.getLogSummary().getNumberOfProcessInstances());
+		int[] events = new int[capacity];
+		long[] timestamps = new long[capacity];
+		int[] caseOffsets = new int[casesCapacity + 1];
+		int size = 0;
+		int cases = 0;
+
+		Iterator<ProcessInstance> it = log.instanceIterator();
+		while (it.hasNext()) {
+			ProcessInstance pi = it.next();
+			Iterator<AuditTrailEntry> it2 = pi.getAuditTrailEntryList().iterator();
+			while (it2.hasNext()) {
+				AuditTrailEntry ate = it2.next();
+				int event = dictionary.getEventId(ate.getElement(), ate.getType());
+				if (event < 0) {
+					continue;
+				}
+				if (size == events.length) {
+					events = Arrays.copyOf(events, size * 2);
+					timestamps = Arrays.copyOf(timestamps, size * 2);
+				}
+				Date timestamp = ate.getTimestamp();
+				events[size] = event;
+				timestamps[size] = (timestamp == null) ? 0L : timestamp.getTime();
+				size++;
+			}
+			cases++;
+			if (cases == caseOffsets.length) {
+				caseOffsets = Arrays.copyOf(caseOffsets, cases * 2);
+			}
+			caseOffsets[cases] = size;
+		}
+
+		return new HMPPTraceStore(Arrays.copyOf(events, size),
+				Arrays.copyOf(timestamps, size),
+				Arrays.copyOf(caseOffsets, cases + 1), cases);
+	}
+
+
+	/**
+	 * This method builds a store with just one case
+	 *
+	 * @param events the event index of each entry
+	 * @param timestamps the timestamp of each entry
+	 * @param length the number of entries of the case
+	 * @return the trace store
+	 */
+	public static HMPPTraceStore singleCase(int[] events, long[] timestamps,
+			int length) {
+		return new HMPPTraceStore(Arrays.copyOf(events, length),
+				Arrays.copyOf(timestamps, length), new int[] { 0, length }, 1);
+	}
+
+
+	/**
+	 * This method returns the number of cases
+	 *
+	 * @return the number of cases
+	 */
+	public int cases() {
+		return cases;
+	}
+
+
+	/**
+	 * This method returns the total number of entries
+	 *
+	 * @return the number of entries
+	 */
+	public int size() {
+		return events.length;
+	}
+
+
+	/**
+	 * This method returns the position of the first entry of a case
+	 *
+	 * @param c the case index
+	 * @return the position of the first entry
+	 */
+	public int caseStart(int c) {
+		return caseOffsets[c];
+	}
+
+
+	/**
+	 * This method returns the position after the last entry of a case
+	 *
+	 * @param c the case index
+	 * @return the position after the last entry
+	 */
+	public int caseEnd(int c) {
+		return caseOffsets[c + 1];
+	}
+
+
+	/**
+	 * This method returns the event index of an entry
+	 *
+	 * @param position the entry position
+	 * @return the event index
+	 */
+	public int getEvent(int position) {
+		return events[position];
+	}
+
+
+	/**
+	 * This method returns the timestamp of an entry
+	 *
+	 * @param position the entry position
+	 * @return the timestamp, in milliseconds
+	 */
+	public long getTimestamp(int position) {
+		return timestamps[position];
+	}
+}
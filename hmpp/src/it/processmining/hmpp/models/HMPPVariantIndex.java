@@ -0,0 +1,207 @@
+package it.processmining.hmpp.models;
+
+import java.util.Arrays;
+
+
+/**
+ * This class groups the process instances of a trace store by their
+ * control-flow variant, i.e. by their ordered sequence of event indexes.
+ * Each variant has a representative process instance (the first one
+ * observed) and the list of all its process instances, so that the counters
+ * depending only on the order of the events can be computed once per variant
+ * and weighted by its multiplicity.
+ *
+ * @author Andrea Burattin
+ */
+public class HMPPVariantIndex {
+
+
+	private final int[] variantOfCase;
+	private final int[] representatives;
+	private final int[] variantOffsets;
+	private final int[] variantCases;
+
+
+	/**
+	 * The class constructor
+	 *
+	 * @param variantOfCase the variant of each process instance
+	 * @param representatives the representative process instance of each
+	 * variant
+	 * @param variantOffsets the offsets of each variant in the cases array
+	 * @param variantCases the process instances, grouped by variant
+	 */
+	private HMPPVariantIndex(int[] variantOfCase, int[] representatives,
+			int[] variantOffsets, int[] variantCases) {
+		this.variantOfCase = variantOfCase;
+		this.representatives = representatives;
+		this.variantOffsets = variantOffsets;
+		this.variantCases = variantCases;
+	}
+
+
+	/**
+	 * This method builds the variant index of a trace store, with a single
+	 * hashing pass over the process instances
+	 *
+	 * @param store the trace store
+	 * @return the variant index
+	 */
+	public static HMPPVariantIndex build(HMPPTraceStore store) {
+		int cases = store.cases();
+		int[] variantOfCase = new int[cases];
+		int[] representatives = new int[16];
+		int[] hashes = new int[16];
+		int[] multiplicity = new int[16];
+		int variants = 0;
+
+		/* Open addressing table of variant indexes */
+		int capacity = 16;
+		while (capacity < 2 * cases) {
+			capacity <<= 1;
+		}
+		int mask = capacity - 1;
+		int[] table = new int[capacity];
+		Arrays.fill(table, -1);
+
+		for (int c = 0; c < cases; c++) {
+			int hash = hash(store, c);
+			int slot = mix(hash) & mask;
+			while (table[slot] != -1) {
+				int v = table[slot];
+				if (hashes[v] == hash && sameSequence(store, representatives[v], c)) {
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (table[slot] == -1) {
+				if (variants == representatives.length) {
+					representatives = Arrays.copyOf(representatives, variants * 2);
+					hashes = Arrays.copyOf(hashes, variants * 2);
+					multiplicity = Arrays.copyOf(multiplicity, variants * 2);
+				}
+				representatives[variants] = c;
+				hashes[variants] = hash;
+				table[slot] = variants;
+				variants++;
+			}
+			variantOfCase[c] = table[slot];
+			multiplicity[table[slot]]++;
+		}
+
+		/* Group the process instances by variant */
+		int[] variantOffsets = new int[variants + 1];
+		for (int v = 0; v < variants; v++) {
+			variantOffsets[v + 1] = variantOffsets[v] + multiplicity[v];
+		}
+		int[] fill = Arrays.copyOf(variantOffsets, variants);
+		int[] variantCases = new int[cases];
+		for (int c = 0; c < cases; c++) {
+			variantCases[fill[variantOfCase[c]]++] = c;
+		}
+
+		return new HMPPVariantIndex(variantOfCase,
+				Arrays.copyOf(representatives, variants), variantOffsets,
+				variantCases);
+	}
+
+
+	/**
+	 * This method returns the number of distinct variants
+	 *
+	 * @return the number of variants
+	 */
+	public int variants() {
+		return representatives.length;
+	}
+
+
+	/**
+	 * This method returns the variant of a process instance
+	 *
+	 * @param c the process instance index
+	 * @return the variant index
+	 */
+	public int getVariant(int c) {
+		return variantOfCase[c];
+	}
+
+
+	/**
+	 * This method returns the representative process instance of a variant
+	 *
+	 * @param v the variant index
+	 * @return the index of the first process instance of the variant
+	 */
+	public int getRepresentative(int v) {
+		return representatives[v];
+	}
+
+
+	/**
+	 * This method returns the number of process instances of a variant
+	 *
+	 * @param v the variant index
+	 * @return the variant multiplicity
+	 */
+	public int getMultiplicity(int v) {
+		return variantOffsets[v + 1] - variantOffsets[v];
+	}
+
+
+	/**
+	 * This method returns a process instance of a variant
+	 *
+	 * @param v the variant index
+	 * @param k the position of the process instance in the variant (between
+	 * 0 and the multiplicity of the variant)
+	 * @return the process instance index
+	 */
+	public int getCase(int v, int k) {
+		return variantCases[variantOffsets[v] + k];
+	}
+
+
+	/**
+	 * This method computes the hash of the event sequence of a process
+	 * instance
+	 */
+	private static int hash(HMPPTraceStore store, int c) {
+		int hash = 1;
+		for (int i = store.caseStart(c); i < store.caseEnd(c); i++) {
+			hash = 31 * hash + store.getEvent(i);
+		}
+		return hash;
+	}
+
+
+	/**
+	 * This method spreads the bits of a hash, for the open addressing table
+	 */
+	private static int mix(int hash) {
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		return hash;
+	}
+
+
+	/**
+	 * This method checks if two process instances have the same event
+	 * sequence
+	 */
+	private static boolean sameSequence(HMPPTraceStore store, int a, int b) {
+		int fromA = store.caseStart(a);
+		int fromB = store.caseStart(b);
+		int length = store.caseEnd(a) - fromA;
+		if (length != store.caseEnd(b) - fromB) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (store.getEvent(fromA + i) != store.getEvent(fromB + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -1,8 +1,11 @@
 package it.processmining.hmpp.ui;
 
 import it.processmining.hmpp.HMPP;
-import it.processmining.hmpp.models.HMPPHeuristicsNet;
+import it.processmining.hmpp.HMPPParameterSweep;
+import it.processmining.hmpp.models.HMPPFitnessEstimate;
+import it.processmining.hmpp.models.HMPPFitnessSampler;
 import it.processmining.hmpp.models.HMPPParameters;
+import it.processmining.hmpp.models.HMPPThresholdHistogram;
 import it.processmining.hmpp.ui.widget.HMPPHistogram;
 
 import java.awt.BorderLayout;
@@ -17,16 +20,9 @@ import java.awt.event.ItemListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -38,6 +34,7 @@ import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
@@ -49,10 +46,7 @@ import org.deckfour.slickerbox.components.HeaderBar;
 import org.deckfour.slickerbox.components.RoundedPanel;
 import org.deckfour.slickerbox.components.SlickerButton;
 import org.deckfour.slickerbox.ui.SlickerCheckBoxUI;
-import org.processmining.exporting.heuristicsNet.HnExport;
 import org.processmining.framework.log.LogReader;
-import org.processmining.framework.models.heuristics.HeuristicsNet;
-import org.processmining.framework.plugin.ProvidedObject;
 import org.processmining.framework.ui.MainUI;
 import org.processmining.framework.ui.WaitDialog;
 
@@ -67,6 +61,13 @@ public class HMPPPreferencesPanel extends JPanel
 
 
 	private static final long serialVersionUID = 7336170449014439824L;
+	/* Time of the first fitness estimate and of each refinement, in ms */
+	private static final long FITNESS_FIRST_ESTIMATE = 300;
+	private static final long FITNESS_REFINEMENT = 200;
+	/* Confidence interval width at which the fitness estimate stops */
+	private static final double FITNESS_CONVERGENCE = 0.001;
+	/* Precision of the relative to best values in the chooser */
+	private static final double RELATIVE_TO_BEST_QUANTUM = 1e-7;
 	private HMPPParameters parameters;
 	protected LogReader log;
 	protected HMPP algorithm;
@@ -83,11 +84,18 @@ public class HMPPPreferencesPanel extends JPanel
 	JTextField andThresholdText;
 	JCheckBox useAllConnectedHeuristics;
 	JCheckBox useLongDistanceDependency;
+	JCheckBox useCausalSuccession;
 	JButton exportAllThePossibleNetwork;
 	
 	JList relativeToBestList;
 	HMPPHistogram positiveObsHisto;
 	HMPPHistogram dependencyThresholdsHisto;
+	JLabel fitnessLabel;
+	
+	/* The thread estimating the fitness of the current parameters (only
+	 * used in the event dispatch thread) */
+	private Thread fitnessThread;
+	private String fitnessParameters;
 	
 
 	/**
@@ -108,7 +116,15 @@ public class HMPPPreferencesPanel extends JPanel
 				dialog.setVisible(true);
 				if (!algorithm.getBasicRelationsMade())
 				{
-					algorithm.makeBasicRelations(log, 0.8);
+					File snapshot = algorithm.getSnapshotFile(log);
+					if (!algorithm.loadBasicRelations(log, snapshot)) {
+						algorithm.makeBasicRelations(log, 0.8);
+						try {
+							algorithm.saveBasicRelations(log, snapshot);
+						} catch (IOException ex) {
+							ex.printStackTrace();
+						}
+					}
 					algorithm.setBasicRelationsMade(true);
 				}
 				dialog.setVisible(false);
@@ -158,6 +174,7 @@ public class HMPPPreferencesPanel extends JPanel
 				AND_THRESHOLD_L);
 		JLabel useAllConnectedHeuristicsLabel = new JLabel();
 		JLabel useLongDistanceDependencyLabel = new JLabel();
+		JLabel useCausalSuccessionLabel = new JLabel();
 		
 		relativeToBestThresholdText = buildTextField();
 		positiveObservationsThresholdText = buildTextField();
@@ -169,6 +186,7 @@ public class HMPPPreferencesPanel extends JPanel
 		andThresholdText = buildTextField();
 		useAllConnectedHeuristics = new JCheckBox();
 		useLongDistanceDependency = new JCheckBox();
+		useCausalSuccession = new JCheckBox();
 		exportAllThePossibleNetwork = new SlickerButton("Export processes");
 		exportAllThePossibleNetwork.addActionListener(new ActionListener() {
 			@Override
@@ -178,6 +196,13 @@ public class HMPPPreferencesPanel extends JPanel
 					algorithm.makeBasicRelations(log, 0.8);
 				}
 				
+				/* The miner is used only here: the thread just uses the
+				 * values and the mining contexts of the sweep */
+				final double[] relativeToBest = algorithm.getRelativeToBestValues();
+				final double[] positiveObs = algorithm.getPositiveObsHistogram().getValues();
+				final double[] depThreshold = algorithm.getDependencyHistogram().getValues();
+				final HMPPParameterSweep sweep = new HMPPParameterSweep(algorithm, log);
+				
 				final Thread saverThread = new Thread() {
 					public void run() {
 						// select destination directory
@@ -189,64 +214,17 @@ public class HMPPPreferencesPanel extends JPanel
 						String saveDir = fc.getSelectedFile().getAbsolutePath();
 						
 						// export all the possible DIFFERENT processes
-						HashSet<HeuristicsNet> processes = new HashSet<HeuristicsNet>();
-						String[] relativeToBest = algorithm.getRelativeToBestValues();
-						Set<Double> positiveObs = algorithm.getPositiveObsThresholdsValues().keySet();
-						Set<Double> depThreshold = algorithm.getDependencyThresholdValues().keySet();
-						
 						WaitDialog dialog = new WaitDialog(MainUI.getInstance(), "Exporting net...", "Please wait, \nexporting net models...");
 						dialog.setVisible(true);
 						
-						FileOutputStream os;
-						HnExport export = new HnExport();
-						
-						StringBuilder CSV = new StringBuilder("ID;Relative to best;Positive observation;Dependency thr;\n");
-						
 						// iterate through all parameter configuration
-						int i = 0;
-						for (String rtb : relativeToBest) {
-							for (Double po : positiveObs) {
-								for (Double dt : depThreshold) {
-		
-									// prepare the configuration
-									HMPPParameters para = new HMPPParameters();
-									para.setRelativeToBestThreshold(Double.parseDouble(rtb));
-									para.setPositiveObservationsThreshold(po.intValue());
-									para.setDependencyThreshold(dt);
-									algorithm.setParameters(para);
-									HMPPHeuristicsNet net = algorithm.makeHeuristicsRelations(log);
-									
-									if (!processes.contains(net)) {
-										processes.add(net);
-										
-										CSV.append(""+ i +";"+ rtb +";"+ po.intValue() +";"+ dt +"\n");
-										
-										// build the network and save it to the file
-										try {
-											os = new FileOutputStream(saveDir + File.separator + i + ".hn");
-											export.export(new ProvidedObject("HeuristicsNet", net), os);
-										} catch (FileNotFoundException ex) {
-											ex.printStackTrace();
-										} catch (IOException ex) {
-											ex.printStackTrace();
-										}
-									}
-									
-									i++;
-									
-								}
-							}
-						}
-						
-						// write the information file
 						try {
-							os = new FileOutputStream(saveDir + File.separator + "info.csv");
-							FileWriter fw = new FileWriter(saveDir + File.separator + "info.csv");
-							fw.write(CSV.toString());
-						} catch (FileNotFoundException ex) {
-							ex.printStackTrace();
+							sweep.export(relativeToBest,
+									positiveObs, depThreshold, new File(saveDir));
 						} catch (IOException ex) {
 							ex.printStackTrace();
+						} catch (InterruptedException ex) {
+							ex.printStackTrace();
 						}
 						
 						dialog.setVisible(false);
@@ -270,6 +248,7 @@ public class HMPPPreferencesPanel extends JPanel
 		andThresholdText.addFocusListener(this);
 		useAllConnectedHeuristics.addFocusListener(this);
 		useLongDistanceDependency.addFocusListener(this);
+		useCausalSuccession.addFocusListener(this);
 		
 		useAllConnectedHeuristics.setSelected(true);
 		useAllConnectedHeuristics.
@@ -277,15 +256,19 @@ public class HMPPPreferencesPanel extends JPanel
 		useLongDistanceDependency.setSelected(false);
 		useLongDistanceDependency.
 			setText("Use long distance dependency heuristics");
+		useCausalSuccession.setSelected(false);
+		useCausalSuccession.
+			setText("Use causal (decay weighted) successions");
 		useAllConnectedHeuristics.setUI(new SlickerCheckBoxUI());
 		useLongDistanceDependency.setUI(new SlickerCheckBoxUI());
+		useCausalSuccession.setUI(new SlickerCheckBoxUI());
 		
 		setParameters(parameters);
 		
 		JPanel parametersPanel = new JPanel();
 		parametersPanel.setOpaque(false);
 		parametersPanel.setBorder(BorderFactory.createEmptyBorder(10,10,10,10));
-		parametersPanel.setLayout(new GridLayout(11, 2, 1, 1));
+		parametersPanel.setLayout(new GridLayout(12, 2, 1, 1));
 		
 		//1: relativeToBestThreshold
 		parametersPanel.add(relativeToBestThresholdLabel, null);
@@ -332,6 +315,7 @@ public class HMPPPreferencesPanel extends JPanel
 				if (e.getStateChange() == ItemEvent.DESELECTED) {
 					parameters.setUseAllConnectedHeuristics(false);
 				}
+				updateFitness();
 			}
 		});
 		
@@ -346,6 +330,22 @@ public class HMPPPreferencesPanel extends JPanel
 				if (e.getStateChange() == ItemEvent.DESELECTED) {
 					parameters.setUseLongDistanceDependency(false);
 				}
+				updateFitness();
+			}
+		});
+		
+		//11: causalSuccession
+		parametersPanel.add(useCausalSuccessionLabel, null);
+		parametersPanel.add(useCausalSuccession, null);
+		useCausalSuccession.addItemListener(new ItemListener() {
+			public void itemStateChanged(ItemEvent e) {
+				if (e.getStateChange() == ItemEvent.SELECTED) {
+					parameters.setUseCausalSuccession(true);
+				}
+				if (e.getStateChange() == ItemEvent.DESELECTED) {
+					parameters.setUseCausalSuccession(false);
+				}
+				updateFitness();
 			}
 		});
 		
@@ -361,8 +361,13 @@ public class HMPPPreferencesPanel extends JPanel
 		/* HISTOGRAMS ======================================================= */
 		
 		/* relative to best */
-		String[] relativeToBestValues = algorithm.getRelativeToBestValues();
-		relativeToBestList = new JList(relativeToBestValues);
+		double[] relativeToBestValues = algorithm.getRelativeToBestValues(RELATIVE_TO_BEST_QUANTUM);
+		DecimalFormat rtbFormat = new DecimalFormat("#.#######");
+		String[] relativeToBestLabels = new String[relativeToBestValues.length];
+		for (int i = 0; i < relativeToBestValues.length; i++) {
+			relativeToBestLabels[i] = rtbFormat.format(relativeToBestValues[i]);
+		}
+		relativeToBestList = new JList(relativeToBestLabels);
 		relativeToBestList.setBackground(Color.BLACK);
 		relativeToBestList.setForeground(Color.WHITE);
 		relativeToBestList.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
@@ -385,16 +390,9 @@ public class HMPPPreferencesPanel extends JPanel
 		
 		
 		/* positive observations histogram */
-		ArrayList<Integer> posObsThrVal = new ArrayList<Integer>();
-		ArrayList<Double> posObsThrLbl = new ArrayList<Double>();
-		HashMap<Double, Integer> posObsHistoMap =  algorithm.getPositiveObsThresholdsValues();
-		Object[] posObsKeys = posObsHistoMap.keySet().toArray();
-		Arrays.sort(posObsKeys);
-		for (int i = 0; i < posObsKeys.length; i ++) {
-			posObsThrVal.add(posObsHistoMap.get(posObsKeys[i]));
-			posObsThrLbl.add((Double)posObsKeys[i]);
-		}
-		positiveObsHisto = new HMPPHistogram(posObsThrVal, posObsThrLbl);
+		HMPPThresholdHistogram posObsHistogram = algorithm.getPositiveObsHistogram();
+		positiveObsHisto = new HMPPHistogram(posObsHistogram.getCounts(),
+				posObsHistogram.getValues());
 		positiveObsHisto.addMouseListener(this);
 		
 		RoundedPanel positiveObsHistoContainer = new RoundedPanel(10, 5, 0);
@@ -409,16 +407,9 @@ public class HMPPPreferencesPanel extends JPanel
 		configurationPanel.add(Box.createVerticalStrut(15));
 		
 		/* dependency thresholds histogram */
-		ArrayList<Integer> depThrVal = new ArrayList<Integer>();
-		ArrayList<Double> depThrLbl = new ArrayList<Double>();
-		HashMap<Double, Integer> depThrHistoMap =  algorithm.getDependencyThresholdValues();
-		Object[] depThrKeys = depThrHistoMap.keySet().toArray();
-		Arrays.sort(depThrKeys);
-		for (int i = 0; i < depThrKeys.length; i ++) {
-			depThrVal.add(depThrHistoMap.get(depThrKeys[i]));
-			depThrLbl.add((Double)depThrKeys[i]);
-		}
-		dependencyThresholdsHisto = new HMPPHistogram(depThrVal, depThrLbl);
+		HMPPThresholdHistogram depThrHistogram = algorithm.getDependencyHistogram();
+		dependencyThresholdsHisto = new HMPPHistogram(depThrHistogram.getCounts(),
+				depThrHistogram.getValues());
 		dependencyThresholdsHisto.addMouseListener(this);
 		
 		RoundedPanel dependencyThrHistoContainer = new RoundedPanel(10, 5, 0);
@@ -428,6 +419,14 @@ public class HMPPPreferencesPanel extends JPanel
 		configurationPanel.add(new JLabel("Dependency thresholds chooser"));
 		configurationPanel.add(Box.createVerticalStrut(7));
 		configurationPanel.add(dependencyThrHistoContainer);
+		configurationPanel.add(Box.createVerticalStrut(15));
+		
+		/* fitness of the current parameters */
+		fitnessLabel = new JLabel();
+		configurationPanel.add(new JLabel("Fitness of the current parameters"));
+		configurationPanel.add(Box.createVerticalStrut(7));
+		configurationPanel.add(fitnessLabel);
+		updateFitness();
 		
 		
 		/* export panel */
@@ -490,6 +489,96 @@ public class HMPPPreferencesPanel extends JPanel
 				readUseAllConnectedHeuristics());
 		parameters.setUseLongDistanceDependency(
 				readUseLongDistanceDependency());
+		parameters.setUseCausalSuccession(readUseCausalSuccession());
+	}
+	
+	
+	/**
+	 * This method starts the estimation of the fitness of the net mined with
+	 * the current parameters, in a background thread which stops the one of
+	 * the previous parameters: a first estimate, with its confidence
+	 * interval, is shown as soon as it is available and it is refined until
+	 * the interval is small enough or the fitness is exact
+	 */
+	private void updateFitness() {
+		final HMPPParameters current = new HMPPParameters();
+		setParameters(current);
+		current.setIntervalsOverlapMultiplier(
+				parameters.getIntervalsOverlapMultiplier());
+		if (current.toString().equals(fitnessParameters)) {
+			return;
+		}
+		fitnessParameters = current.toString();
+		
+		if (fitnessThread != null) {
+			fitnessThread.interrupt();
+		}
+		fitnessLabel.setText("estimating...");
+		/* The miner is prepared here, the thread uses just its own context */
+		final Callable<HMPPFitnessSampler> samplerTask = algorithm.newFitnessSampler(current, log);
+		fitnessThread = new Thread("HMPP fitness estimation") {
+			public void run() {
+				HMPPFitnessSampler sampler;
+				try {
+					sampler = samplerTask.call();
+				} catch (Exception e) {
+					e.printStackTrace();
+					return;
+				}
+				HMPPFitnessEstimate estimate = sampler.refine(FITNESS_FIRST_ESTIMATE);
+				while (!isInterrupted()) {
+					showFitness(this, estimate);
+					if (estimate.isExact() ||
+							estimate.getWidth() <= FITNESS_CONVERGENCE) {
+						break;
+					}
+					estimate = sampler.refine(FITNESS_REFINEMENT);
+				}
+			}
+		};
+		fitnessThread.setDaemon(true);
+		fitnessThread.start();
+	}
+	
+	
+	/**
+	 * This method stops the estimation of the fitness when the panel is
+	 * closed
+	 */
+	@Override
+	public void removeNotify() {
+		if (fitnessThread != null) {
+			fitnessThread.interrupt();
+			fitnessThread = null;
+			fitnessParameters = null;
+		}
+		super.removeNotify();
+	}
+	
+	
+	/**
+	 * This method shows a fitness estimate, unless the thread which computed
+	 * it has been replaced by the one of new parameters
+	 * 
+	 * @param source the thread which computed the estimate
+	 * @param estimate the fitness estimate
+	 */
+	private void showFitness(final Thread source,
+			final HMPPFitnessEstimate estimate) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (source != fitnessThread) {
+					return;
+				}
+				if (estimate.isExact()) {
+					fitnessLabel.setText(estimate.toString());
+				} else {
+					fitnessLabel.setText(estimate + " (95% confidence, " +
+							estimate.getReplayedVariants() + " of " +
+							estimate.getVariants() + " variants replayed)");
+				}
+			}
+		});
 	}
 	
 	
@@ -541,6 +630,7 @@ public class HMPPPreferencesPanel extends JPanel
 		} else if (e.getSource() == andThresholdText) {
 			parameters.setAndThreshold(readAndThreshold());
 		}
+		updateFitness();
 	}
 
 
@@ -708,6 +798,16 @@ public class HMPPPreferencesPanel extends JPanel
 		return useLongDistanceDependency.isSelected();
 	}
 
+	
+	/**
+	 * This method read the use-causal-succession
+	 * 
+	 * @return the parameter value, as setteid in the widget
+	 */
+	private boolean readUseCausalSuccession() {
+		return useCausalSuccession.isSelected();
+	}
+
 
 	@Override
 	public void stateChanged(ChangeEvent arg0) {
@@ -735,6 +835,7 @@ public class HMPPPreferencesPanel extends JPanel
 		dependencyThresholdsHisto.repaint();
 		positiveObsHisto.repaint();
 		setParameters(parameters);
+		updateFitness();
 	}
 
 
@@ -770,5 +871,6 @@ public class HMPPPreferencesPanel extends JPanel
 	public void valueChanged(ListSelectionEvent e) {
 		relativeToBestThresholdText.setText((String) relativeToBestList.getSelectedValue());
 		setParameters(parameters);
+		updateFitness();
 	}
 }
@@ -10,7 +10,6 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 
 import javax.swing.JComponent;
 
@@ -32,9 +31,9 @@ public class HMPPHistogram extends JComponent implements MouseListener,
 	protected Color colorClicked = new Color(200, 10, 10);
 	protected Color colorClickedHover = new Color(230, 40, 40);
 	protected Color colorSuggestion = new Color(150, 150, 150);
-	private ArrayList<Integer> elements;
-	private ArrayList<Double> labels;
-	private Integer maxVal;
+	private int[] elements;
+	private double[] labels;
+	private int maxVal;
 	private int barWidth;
 	private int mouseX = -1;
 	private int mouseY = -1;
@@ -43,18 +42,18 @@ public class HMPPHistogram extends JComponent implements MouseListener,
 	private int suggestedColumn = -1;
 	
 	
-	public HMPPHistogram(ArrayList<Integer> elements, ArrayList<Double> labels) {
+	public HMPPHistogram(int[] elements, double[] labels) {
 		this(elements);
 		this.labels = labels;
 	}
 	
 	
-	public HMPPHistogram(ArrayList<Integer> elements) {
+	public HMPPHistogram(int[] elements) {
 		this.elements = elements;
 		this.maxVal = Integer.MIN_VALUE;
-		for (int i = 0; i < elements.size(); i++) {
-			if (elements.get(i) > this.maxVal)
-				this.maxVal = elements.get(i);
+		for (int i = 0; i < elements.length; i++) {
+			if (elements[i] > this.maxVal)
+				this.maxVal = elements[i];
 		}
 		this.setBackground(Color.BLACK);
 		this.setOpaque(true);
@@ -67,7 +66,7 @@ public class HMPPHistogram extends JComponent implements MouseListener,
 	protected void paintComponent(Graphics g) {
 		int width = getWidth();
 		int height = getHeight();
-		int size = elements.size();
+		int size = elements.length;
 		
 		Graphics2D g2d = (Graphics2D)g;
 		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -90,10 +89,10 @@ public class HMPPHistogram extends JComponent implements MouseListener,
 		
 		gBuf.setFont(gBuf.getFont().deriveFont(10.0f));
 		int tempBarWidth = barWidth - 1;
-		for(int i = 0; i < elements.size(); i++) {
-			barHeight = (int)((double)maxBarHeight * ((double)elements.get(i) / maxVal));
+		for(int i = 0; i < elements.length; i++) {
+			barHeight = (int)((double)maxBarHeight * ((double)elements[i] / maxVal));
 			barY = 1 + maxBarHeight - barHeight;
-			gBuf.setColor(measureColor(((double)elements.get(i) / maxVal)));
+			gBuf.setColor(measureColor(((double)elements[i] / maxVal)));
 			if (i == columnHover)
 				gBuf.setColor(colorHover);
 			if (i == columnClicked)
@@ -121,7 +120,7 @@ public class HMPPHistogram extends JComponent implements MouseListener,
 		if (mouseX >= 0 && mouseX < ((size * barWidth))) {
 			// draw info
 			int eventX = getColumn(mouseX);
-			if (eventX < elements.size() && eventX >= 0)
+			if (eventX < elements.length && eventX >= 0)
 				paintInfo(g2d, eventX, mouseX, mouseY, width);
 		}
 	}
@@ -141,10 +140,10 @@ public class HMPPHistogram extends JComponent implements MouseListener,
 		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
 				RenderingHints.VALUE_ANTIALIAS_ON);
 		
-		String countStr = "Total elements: " + elements.get(eventX);
+		String countStr = "Total elements: " + elements[eventX];
 		String valueStr = "Value: ";
 		if (labels != null)
-			valueStr = valueStr + f.format(labels.get(eventX));
+			valueStr = valueStr + f.format(labels[eventX]);
 		else
 			valueStr = valueStr + "/";
 		FontMetrics fontMetrics = this.getFontMetrics(g2d.getFont().deriveFont(11.0f));
@@ -217,8 +216,8 @@ public class HMPPHistogram extends JComponent implements MouseListener,
 	
 	public void suggestCount(int targetCount) {
 		suggestedColumn = -1;
-		for (int i = elements.size() -1; i >= 0; i--) {
-			if (elements.get(i) >= targetCount) {
+		for (int i = elements.length -1; i >= 0; i--) {
+			if (elements[i] >= targetCount) {
 				suggestedColumn = i;
 				break;
 			}
@@ -233,16 +232,16 @@ public class HMPPHistogram extends JComponent implements MouseListener,
 	}
 	
 	
-	public Integer getColumnCount(int c) {
-		return elements.get(c);
+	public int getColumnCount(int c) {
+		return elements[c];
 	}
 	
 	
-	public Double getColumnValue(int c) {
-		if (labels == null || c > labels.size())
+	public double getColumnValue(int c) {
+		if (labels == null || c >= labels.length)
 			return 0.;
 		else
-			return labels.get(c);
+			return labels[c];
 	}
 	
 	